@@ -0,0 +1,178 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.jartransform.mappings.SyntheticMappings;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipWriter;
+import net.fabricmc.loader.api.metadata.ContactInformation;
+import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.loading.FMLLoader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates Fabric mod jars full of intermediary-named classes, so that the converter can be benchmarked without real mods or mappings
+ */
+public class SyntheticJars {
+	public static final String MOD_ID = "synthetic";
+	private static final String ACCESS_WIDENER_NAME = "synthetic.accesswidener";
+	/** Mod classes form inheritance chains of this length, rooted at a minecraft class */
+	private static final int CHAIN_LENGTH = 4;
+
+	private static String modClass(int index) {
+		return "com/example/synthetic/Class" + index;
+	}
+
+	/**
+	 * Write a synthetic mod jar
+	 * @param file the file to write the jar to
+	 * @param classCount the number of classes in the jar
+	 * @param minecraftClassCount the number of classes in the mapping data, as written by {@link SyntheticMappings#write}
+	 */
+	public static void writeModJar(Path file, int classCount, int minecraftClassCount) throws IOException {
+		// Seeded, so that every run benchmarks the same jar
+		var random = new Random(classCount);
+		try (var output = ZipWriter.create(file)) {
+			output.write("fabric.mod.json", """
+					{"schemaVersion": 1, "id": "%s", "version": "1.0.0", "accessWidener": "%s"}""".formatted(MOD_ID, ACCESS_WIDENER_NAME).getBytes(StandardCharsets.UTF_8));
+			for (var i = 0; i < classCount; i++) {
+				output.write(modClass(i) + ".class", generateClass(i, random, minecraftClassCount));
+			}
+			output.write(MOD_ID + ".refmap.json", generateRefmap(classCount / 10, random, minecraftClassCount));
+			output.write(ACCESS_WIDENER_NAME, generateAccessWidener(classCount / 10, random, minecraftClassCount));
+			// Resources are copied without being decompressed, but still make up a large part of most jars
+			for (var i = 0; i < classCount / 10; i++) {
+				var texture = new byte[2048];
+				random.nextBytes(texture);
+				output.write("assets/" + MOD_ID + "/textures/texture" + i + ".png", texture);
+			}
+		}
+	}
+
+	private static byte[] generateClass(int index, Random random, int minecraftClassCount) {
+		var chainRoot = index - index % CHAIN_LENGTH;
+		var rootSuperClass = chainRoot % minecraftClassCount;
+		var superName = index == chainRoot ? SyntheticMappings.intermediaryClass(rootSuperClass) : modClass(index - 1);
+
+		var cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, modClass(index), null, superName, null);
+
+		var fieldTypes = new String[2];
+		for (var i = 0; i < fieldTypes.length; i++) {
+			fieldTypes[i] = "L" + SyntheticMappings.intermediaryClass(random.nextInt(minecraftClassCount)) + ";";
+			cw.visitField(Opcodes.ACC_PRIVATE, "ref" + i, fieldTypes[i], null, null).visitEnd();
+		}
+
+		var constructor = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		constructor.visitCode();
+		constructor.visitVarInsn(Opcodes.ALOAD, 0);
+		constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		constructor.visitInsn(Opcodes.RETURN);
+		constructor.visitMaxs(0, 0);
+		constructor.visitEnd();
+
+		// Overrides a minecraft method, so its name can only be resolved through the class hierarchy
+		var override = cw.visitMethod(Opcodes.ACC_PUBLIC, SyntheticMappings.intermediaryMethod(rootSuperClass, 0), "()V", null, null);
+		override.visitCode();
+		override.visitInsn(Opcodes.RETURN);
+		override.visitMaxs(0, 0);
+		override.visitEnd();
+
+		for (var i = 0; i < 4; i++) {
+			var owner = random.nextInt(minecraftClassCount);
+			var argumentType = "L" + SyntheticMappings.intermediaryClass(random.nextInt(minecraftClassCount)) + ";";
+			var method = cw.visitMethod(Opcodes.ACC_PUBLIC, "run" + i, "(" + argumentType + ")V", null, null);
+			method.visitCode();
+			method.visitVarInsn(Opcodes.ALOAD, 1);
+			method.visitVarInsn(Opcodes.ALOAD, 0);
+			method.visitFieldInsn(Opcodes.GETFIELD, modClass(index), "ref" + (i % fieldTypes.length), fieldTypes[i % fieldTypes.length]);
+			method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SyntheticMappings.intermediaryClass(owner),
+					SyntheticMappings.intermediaryMethod(owner, random.nextInt(SyntheticMappings.MEMBERS_PER_CLASS)), "(" + fieldTypes[i % fieldTypes.length] + ")V", false);
+			var fieldOwner = random.nextInt(minecraftClassCount);
+			method.visitFieldInsn(Opcodes.GETSTATIC, SyntheticMappings.intermediaryClass(fieldOwner),
+					SyntheticMappings.intermediaryField(fieldOwner, random.nextInt(SyntheticMappings.MEMBERS_PER_CLASS)), "I");
+			method.visitInsn(Opcodes.POP);
+			method.visitInsn(Opcodes.RETURN);
+			method.visitMaxs(0, 0);
+			method.visitEnd();
+		}
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static String randomMethodReference(Random random, int minecraftClassCount) {
+		var owner = random.nextInt(minecraftClassCount);
+		return "L" + SyntheticMappings.intermediaryClass(owner) + ";" + SyntheticMappings.intermediaryMethod(owner, random.nextInt(SyntheticMappings.MEMBERS_PER_CLASS))
+				+ "(L" + SyntheticMappings.intermediaryClass(random.nextInt(minecraftClassCount)) + ";)V";
+	}
+
+	private static byte[] generateRefmap(int mixinCount, Random random, int minecraftClassCount) {
+		var mixins = new StringBuilder();
+		for (var i = 0; i < mixinCount; i++) {
+			if (i > 0) mixins.append(",");
+			mixins.append("\"com/example/synthetic/mixin/Mixin").append(i).append("\":{");
+			for (var j = 0; j < 4; j++) {
+				if (j > 0) mixins.append(",");
+				mixins.append("\"target").append(j).append("\":\"").append(randomMethodReference(random, minecraftClassCount)).append("\"");
+			}
+			mixins.append("}");
+		}
+		return "{\"mappings\":{%s},\"data\":{\"named:intermediary\":{%s}}}".formatted(mixins, mixins).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] generateAccessWidener(int entryCount, Random random, int minecraftClassCount) {
+		var accessWidener = new StringBuilder("accessWidener\tv1\tintermediary\n");
+		for (var i = 0; i < entryCount; i++) {
+			var owner = random.nextInt(minecraftClassCount);
+			var member = random.nextInt(SyntheticMappings.MEMBERS_PER_CLASS);
+			var className = SyntheticMappings.intermediaryClass(owner);
+			switch (i % 3) {
+				case 0 -> accessWidener.append("accessible\tclass\t").append(className);
+				case 1 -> accessWidener.append("accessible\tmethod\t").append(className).append("\t")
+						.append(SyntheticMappings.intermediaryMethod(owner, member)).append("\t()V");
+				default -> accessWidener.append("mutable\tfield\t").append(className).append("\t")
+						.append(SyntheticMappings.intermediaryField(owner, member)).append("\tI");
+			}
+			accessWidener.append("\n");
+		}
+		return accessWidener.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create the Fabric metadata for a synthetic mod; only the parts used by the converter are implemented
+	 * @return the mod metadata
+	 */
+	public static LoaderModMetadata createMetadata() {
+		return (LoaderModMetadata) Proxy.newProxyInstance(SyntheticJars.class.getClassLoader(), new Class<?>[] {LoaderModMetadata.class}, (proxy, method, args) -> switch (method.getName()) {
+			case "getId", "getName" -> MOD_ID;
+			case "getDescription" -> "";
+			case "getAccessWidener" -> ACCESS_WIDENER_NAME;
+			case "getIconPath" -> Optional.empty();
+			case "getAuthors", "getContributors", "getLicense" -> List.of();
+			case "getContact" -> ContactInformation.EMPTY;
+			case "getMixinConfigs" -> Set.of();
+			case "hashCode" -> System.identityHashCode(proxy);
+			case "equals" -> proxy == args[0];
+			case "toString" -> MOD_ID;
+			default -> null;
+		});
+	}
+
+	/**
+	 * The converter reads the physical side from FML, which isn't set up outside of a Forge launch
+	 */
+	public static void setUpEnvironment() throws ReflectiveOperationException {
+		var distField = FMLLoader.class.getDeclaredField("dist");
+		distField.setAccessible(true);
+		distField.set(null, Dist.CLIENT);
+	}
+}
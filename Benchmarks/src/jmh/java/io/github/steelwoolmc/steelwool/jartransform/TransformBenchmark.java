@@ -0,0 +1,102 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
+import io.github.steelwoolmc.steelwool.jartransform.mappings.SyntheticMappings;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipReader;
+import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks for converting a single synthetic mod jar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransformBenchmark {
+	private static final int MINECRAFT_CLASS_COUNT = 8000;
+
+	/** The number of classes in the mod jar */
+	@Param({"500", "5000"})
+	public int classCount;
+
+	private Path folder;
+	private Path outputPath;
+	private Mappings.SimpleMappingData mappings;
+	private ZipReader input;
+	private JarScanCache.ScanResult scan;
+	private ClassHierarchy hierarchy;
+	private LoaderModMetadata metadata;
+	private ConversionExecutor executor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, ReflectiveOperationException {
+		SyntheticJars.setUpEnvironment();
+		folder = Files.createTempDirectory("steelwool-benchmark");
+		var mappingFile = folder.resolve("mappings.bin");
+		SyntheticMappings.write(mappingFile, MINECRAFT_CLASS_COUNT);
+		mappings = SyntheticMappings.load(mappingFile);
+
+		var jarPath = folder.resolve("synthetic.jar");
+		SyntheticJars.writeModJar(jarPath, classCount, MINECRAFT_CLASS_COUNT);
+		input = ZipReader.open(jarPath);
+		scan = FabricToForgeConverter.scanJar(input);
+		hierarchy = buildHierarchy();
+		metadata = SyntheticJars.createMetadata();
+		executor = ConversionExecutor.create();
+		outputPath = folder.resolve("output.jar");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		executor.close();
+		input.close();
+		try (var files = Files.list(folder)) {
+			for (var file : files.toList()) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.deleteIfExists(folder);
+	}
+
+	/**
+	 * Collecting the class hierarchy data from the jar, as done on a hierarchy cache miss
+	 */
+	@Benchmark
+	public JarScanCache.ScanResult scanJar() throws IOException {
+		return FabricToForgeConverter.scanJar(input);
+	}
+
+	/**
+	 * Building the hierarchy index from the scanned jar, as done when the mods or mappings have changed since the previous launch
+	 */
+	@Benchmark
+	public ClassHierarchy buildHierarchy() {
+		return new ClassHierarchy.Builder()
+				.addClasses(scan.classes())
+				.addReferencedClasses(scan.referencedClasses())
+				.build();
+	}
+
+	/**
+	 * Converting the whole jar, as done on a conversion cache miss; a new remapper is used each time, as in a real launch
+	 */
+	@Benchmark
+	public Path transformJar() throws IOException {
+		FabricToForgeConverter.transformJar(input, outputPath, mappings, new Mappings.SteelwoolRemapper(mappings, hierarchy), metadata, executor);
+		return outputPath;
+	}
+}
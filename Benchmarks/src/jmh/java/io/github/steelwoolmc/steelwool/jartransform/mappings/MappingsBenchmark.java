@@ -0,0 +1,128 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import io.github.steelwoolmc.steelwool.jartransform.ClassHierarchy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for loading mapping data, and for the lookups done for every class, method, field, and string that is remapped
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingsBenchmark {
+	private static final int LOOKUPS = 1024;
+
+	/** The number of minecraft classes in the mapping data; the real data has about 8000 */
+	@Param({"8000"})
+	public int classCount;
+
+	private Path folder;
+	private Path mappingFile;
+	private Mappings.SimpleMappingData mappings;
+	private Mappings.SteelwoolRemapper remapper;
+
+	private final String[] classNames = new String[LOOKUPS];
+	private final String[] methodOwners = new String[LOOKUPS];
+	private final String[] methodNames = new String[LOOKUPS];
+	private final String[] fieldNames = new String[LOOKUPS];
+	private final String[] strings = new String[LOOKUPS];
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		folder = Files.createTempDirectory("steelwool-benchmark");
+		mappingFile = folder.resolve("mappings.bin");
+		SyntheticMappings.write(mappingFile, classCount);
+		mappings = SyntheticMappings.load(mappingFile);
+
+		// Mod classes extending minecraft classes, so that method lookups have to go through the hierarchy
+		var hierarchyBuilder = new ClassHierarchy.Builder();
+		for (var i = 0; i < classCount; i++) {
+			hierarchyBuilder.addReferencedClasses(List.of(SyntheticMappings.intermediaryClass(i)));
+		}
+		for (var i = 0; i < LOOKUPS; i++) {
+			var name = "com/example/synthetic/Class" + i;
+			hierarchyBuilder.addClasses(List.of(new ClassHierarchy.ClassEntry(name, SyntheticMappings.intermediaryClass(i % classCount), List.of())));
+			hierarchyBuilder.addReferencedClasses(List.of(name));
+		}
+		remapper = new Mappings.SteelwoolRemapper(mappings, hierarchyBuilder.build());
+
+		var random = new Random(0);
+		for (var i = 0; i < LOOKUPS; i++) {
+			var classIndex = random.nextInt(classCount);
+			var memberIndex = random.nextInt(SyntheticMappings.MEMBERS_PER_CLASS);
+			classNames[i] = SyntheticMappings.intermediaryClass(classIndex);
+			// A mix of minecraft owners and mod owners that inherit the method
+			methodOwners[i] = i % 2 == 0 ? classNames[i] : "com/example/synthetic/Class" + i;
+			methodNames[i] = SyntheticMappings.intermediaryMethod(i % 2 == 0 ? classIndex : i % classCount, memberIndex);
+			fieldNames[i] = SyntheticMappings.intermediaryField(classIndex, memberIndex);
+			// Similar to refmap entries
+			strings[i] = "L" + classNames[i] + ";" + methodNames[i] + "(L" + SyntheticMappings.intermediaryClass(random.nextInt(classCount)) + ";I)V";
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (var files = Files.list(folder)) {
+			for (var file : files.toList()) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.deleteIfExists(folder);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Mappings.SimpleMappingData loadMappings() throws IOException {
+		return SyntheticMappings.load(mappingFile);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void mapClassName(Blackhole blackhole) {
+		for (var name : classNames) {
+			blackhole.consume(remapper.map(name));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void mapMethodName(Blackhole blackhole) {
+		for (var i = 0; i < LOOKUPS; i++) {
+			blackhole.consume(remapper.mapMethodName(methodOwners[i], methodNames[i], "()V"));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void mapFieldName(Blackhole blackhole) {
+		for (var i = 0; i < LOOKUPS; i++) {
+			blackhole.consume(remapper.mapFieldName(classNames[i], fieldNames[i], "I"));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void naiveRemapString(Blackhole blackhole) {
+		for (var string : strings) {
+			blackhole.consume(Mappings.naiveRemapString(mappings, string));
+		}
+	}
+}
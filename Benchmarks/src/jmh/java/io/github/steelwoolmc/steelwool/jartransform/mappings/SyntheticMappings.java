@@ -0,0 +1,65 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Generates intermediary->TSRG mapping data with the same shape as the real data, so that benchmarks don't need the real mappings
+ *
+ * <p>Every class {@code net/minecraft/class_<i>} has {@link #MEMBERS_PER_CLASS} methods and fields, with consecutive ids.</p>
+ */
+public class SyntheticMappings {
+	/** The number of intermediary methods, and of fields, per class */
+	public static final int MEMBERS_PER_CLASS = 8;
+	private static final String CONTENT_HASH = "synthetic";
+
+	public static String intermediaryClass(int classIndex) {
+		return "net/minecraft/class_" + classIndex;
+	}
+
+	public static String intermediaryMethod(int classIndex, int memberIndex) {
+		return "method_" + (classIndex * MEMBERS_PER_CLASS + memberIndex);
+	}
+
+	public static String intermediaryField(int classIndex, int memberIndex) {
+		return "field_" + (classIndex * MEMBERS_PER_CLASS + memberIndex);
+	}
+
+	/**
+	 * Write a synthetic mapping table
+	 * @param file the file to write the table to
+	 * @param classCount the number of classes to generate mappings for
+	 */
+	public static void write(Path file, int classCount) throws IOException {
+		var classes = new HashMap<String, String>();
+		var methods = new HashMap<String, String>();
+		var fields = new HashMap<String, String>();
+		var specialCases = new HashMap<String, String>();
+
+		for (var i = 0; i < classCount; i++) {
+			classes.put(intermediaryClass(i), "net/minecraft/synthetic/Class" + i);
+			for (var j = 0; j < MEMBERS_PER_CLASS; j++) {
+				var id = i * MEMBERS_PER_CLASS + j;
+				methods.put(intermediaryMethod(i, j), "m_" + id + "_");
+				fields.put(intermediaryField(i, j), "f_" + id + "_");
+			}
+			// The real data has a few hundred special cases spread across all classes
+			if (i % 100 == 0) {
+				specialCases.put(intermediaryClass(i) + "::" + intermediaryMethod(i, 0), "m_special_" + i + "_");
+			}
+		}
+
+		MappingTable.write(file, Mappings.TARGET_VERSION, CONTENT_HASH, List.of(classes, methods, fields, specialCases), Mappings.ID_FORMATS);
+	}
+
+	/**
+	 * Load a synthetic mapping table, in the same way as the real mapping data
+	 * @param file the file written by {@link #write}
+	 * @return the mapping data
+	 */
+	public static Mappings.SimpleMappingData load(Path file) throws IOException {
+		return Mappings.loadMappingTable(file, CONTENT_HASH);
+	}
+}
@@ -6,53 +6,78 @@ import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.api.ModInitializer;
 
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandleProxies;
 import java.lang.invoke.MethodHandles;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 public class Entrypoints {
+	/** Resolved entrypoints, by entrypoint key and type; each list is only built once, with an instance per entry */
+	private static final Map<CacheKey, List<EntrypointContainer<?>>> containers = new ConcurrentHashMap<>();
+
 	public static void runClientEntrypoints() {
 		Constants.LOG.info("Running common and client entrypoints!");
 
-		var allEntrypoints = EntrypointsData.getEntrypoints();
-
-		var mainEntrypoints = allEntrypoints.getOrDefault("main", List.of());
-		var clientEntrypoints = allEntrypoints.getOrDefault("client", List.of());
-
-		mainEntrypoints.stream().filter(entrypoint -> entrypoint.getAdapter().equals("default")).forEach(entrypoint -> {
-			var init = createInitializer(entrypoint.getValue(), ModInitializer.class);
-			init.onInitialize();
-		});
-
-		clientEntrypoints.stream().filter(entrypoint -> entrypoint.getAdapter().equals("default")).forEach(entrypoint -> {
-			var init = createInitializer(entrypoint.getValue(), ClientModInitializer.class);
-			init.onInitializeClient();
-		});
+		getEntrypoints("main", ModInitializer.class).forEach(ModInitializer::onInitialize);
+		getEntrypoints("client", ClientModInitializer.class).forEach(ClientModInitializer::onInitializeClient);
 	}
 
 	public static void runServerEntrypoints() {
 		Constants.LOG.info("Running common and server entrypoints!");
 
-		var allEntrypoints = EntrypointsData.getEntrypoints();
-
-		var mainEntrypoints = allEntrypoints.getOrDefault("main", List.of());
-		var serverEntrypoints = allEntrypoints.getOrDefault("server", List.of());
+		getEntrypoints("main", ModInitializer.class).forEach(ModInitializer::onInitialize);
+		getEntrypoints("server", DedicatedServerModInitializer.class).forEach(DedicatedServerModInitializer::onInitializeServer);
+	}
 
-		mainEntrypoints.stream().filter(entrypoint -> entrypoint.getAdapter().equals("default")).forEach(entrypoint -> {
-			var init = createInitializer(entrypoint.getValue(), ModInitializer.class);
-			init.onInitialize();
-		});
+	/**
+	 * Get the entrypoints of all mods for a given key, resolving them the first time they are requested
+	 * @param key the entrypoint key (e.g. {@code main})
+	 * @param type the type that the entrypoints implement
+	 * @return the entrypoints, along with the mods that declared them
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<EntrypointContainer<T>> getEntrypointContainers(String key, Class<T> type) {
+		var cacheKey = new CacheKey(key, type);
+		var cached = containers.get(cacheKey);
+		if (cached != null) return (List<EntrypointContainer<T>>) (List<?>) cached;
+
+		// Not computeIfAbsent, as creating an entrypoint may run mod code that requests other entrypoints
+		var resolved = new ArrayList<EntrypointContainer<?>>();
+		for (var entry : EntrypointsData.getEntrypoints().getOrDefault(key, List.of())) {
+			// TODO support other language adapters
+			if (!entry.metadata().getAdapter().equals("default")) continue;
+			var definition = entry.metadata().getValue();
+			try {
+				resolved.add(new EntrypointContainer<>(entry.modId(), definition, createInitializer(definition, type)));
+			} catch (RuntimeException e) {
+				throw new RuntimeException(String.format("Could not create %s entrypoint %s for %s", key, definition, entry.modId()), e);
+			}
+		}
+		var result = Collections.unmodifiableList(resolved);
+		var existing = containers.putIfAbsent(cacheKey, result);
+		return (List<EntrypointContainer<T>>) (List<?>) (existing != null ? existing : result);
+	}
 
-		serverEntrypoints.stream().filter(entrypoint -> entrypoint.getAdapter().equals("default")).forEach(entrypoint -> {
-			var init = createInitializer(entrypoint.getValue(), DedicatedServerModInitializer.class);
-			init.onInitializeServer();
-		});
+	/**
+	 * Get the entrypoints of all mods for a given key, resolving them the first time they are requested
+	 * @param key the entrypoint key (e.g. {@code main})
+	 * @param type the type that the entrypoints implement
+	 * @return the entrypoints
+	 */
+	public static <T> List<T> getEntrypoints(String key, Class<T> type) {
+		return getEntrypointContainers(key, type).stream().map(EntrypointContainer::entrypoint).toList();
 	}
 
 	// TODO actually test cases other than class
@@ -69,7 +94,7 @@ public class Entrypoints {
 				checkArgument(type.isAssignableFrom(c), "%s cannot be cast to %s", c.getName(), type.getName());
 				return (T) c.getDeclaredConstructor().newInstance();
 			} else {
-				var possibleMethods = Arrays.stream(c.getDeclaredMethods()).filter(method -> method.getName().equals(parts[1])).collect(Collectors.toList());
+				var possibleMethods = Arrays.stream(c.getDeclaredMethods()).filter(method -> method.getName().equals(parts[1])).toList();
 				checkArgument(possibleMethods.size() < 2, "Ambiguous entrypoint; found multiple methods for %s", entrypoint);
 				try {
 					// Static field entrypoint
@@ -84,16 +109,56 @@ public class Entrypoints {
 				checkArgument(type.isInterface(), "Cannot use a method entrypoint for a non-interface type");
 				// Method entrypoint
 				var method = possibleMethods.get(0);
-
-				var methodHandle = MethodHandles.lookup().unreflect(method);
-				if ((method.getModifiers() & Modifier.STATIC) == 0) {
-					var inst = c.getDeclaredConstructor().newInstance();
-					methodHandle.bindTo(inst);
-				}
-				return MethodHandleProxies.asInterfaceInstance(type, methodHandle);
+				var receiver = (method.getModifiers() & Modifier.STATIC) == 0 ? c.getDeclaredConstructor().newInstance() : null;
+				return createMethodEntrypoint(method, receiver, type);
 			}
-		} catch (ClassNotFoundException | NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
+		} catch (ReflectiveOperationException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Implement a functional interface with an entrypoint method
+	 *
+	 * <p>A class is generated with {@link LambdaMetafactory}, so that calls are as fast as calls to a lambda.
+	 * If the method can't be used for that (e.g. its signature only matches through boxing or other conversions),
+	 * a slower {@link MethodHandleProxies} proxy is used instead.</p>
+	 * @param method the entrypoint method
+	 * @param receiver the instance to call the method on, or null for static methods
+	 * @param type the functional interface to implement
+	 * @return the implementation of the interface
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T createMethodEntrypoint(Method method, Object receiver, Class<T> type) throws ReflectiveOperationException {
+		var interfaceMethods = Arrays.stream(type.getMethods()).filter(m -> Modifier.isAbstract(m.getModifiers())).toList();
+		checkArgument(interfaceMethods.size() == 1, "%s is not a functional interface", type.getName());
+		var interfaceMethod = interfaceMethods.get(0);
+
+		var lookup = MethodHandles.lookup();
+		MethodHandle methodHandle = lookup.unreflect(method);
+		var interfaceMethodType = MethodType.methodType(interfaceMethod.getReturnType(), interfaceMethod.getParameterTypes());
+		try {
+			// The receiver (if any) is captured by the generated class, like with a bound method reference
+			var factoryType = receiver == null ? MethodType.methodType(type) : MethodType.methodType(type, method.getDeclaringClass());
+			var factory = LambdaMetafactory.metafactory(lookup, interfaceMethod.getName(), factoryType, interfaceMethodType, methodHandle, interfaceMethodType).getTarget();
+			return (T) (receiver == null ? factory.invoke() : factory.invoke(receiver));
+		} catch (LambdaConversionException e) {
+			Constants.LOG.debug("Falling back to a proxy for entrypoint method {}", method, e);
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+
+		if (receiver != null) methodHandle = methodHandle.bindTo(receiver);
+		return MethodHandleProxies.asInterfaceInstance(type, methodHandle);
+	}
+
+	/**
+	 * A resolved entrypoint
+	 * @param modId the id of the mod that declared the entrypoint
+	 * @param definition the entrypoint as written in the mod's metadata
+	 * @param entrypoint the entrypoint instance
+	 */
+	public record EntrypointContainer<T>(String modId, String definition, T entrypoint) {}
+
+	private record CacheKey(String key, Class<?> type) {}
 }
@@ -16,11 +16,14 @@ public class Constants {
 	/** The mod's logger */
 	public static final Logger LOG = LogManager.getLogger(MOD_NAME);
 
-	// TODO at some point we'll want to store data in the cache about what steelwool version was last used
+	/** The version of Steelwool, used to invalidate cached data (e.g. converted mods) created by other versions */
+	public static final String VERSION = "${version}";
+	/** Identifies the sources Steelwool was built from, as development builds often share a version */
+	public static final String BUILD_ID = "${build_id}";
+
 	/** Game-directory-relative path for cached mod data (mappings, transformed mods, etc.) */
 	public static final Path MOD_CACHE_ROOT = Path.of("." + MOD_ID);
 
-	// TODO store and compare file hash if we cache the inner jar?
 	/** The name of the inner jar nested within the main Steelwool jar file */
 	public static final String INNER_JAR_NAME = "${inner_jar}";
 }
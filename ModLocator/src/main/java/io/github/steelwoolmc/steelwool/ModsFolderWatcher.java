@@ -0,0 +1,78 @@
+package io.github.steelwoolmc.steelwool;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Watches the mods folder while the game is running, and runs a task whenever mod jars are added, changed or removed
+ *
+ * <p>Changes are only acted on once the folder has been quiet for a moment, so that copying in several (or large) jars
+ * only triggers the task once. The task runs on the watcher thread, so changes made while it runs are handled afterwards.</p>
+ */
+class ModsFolderWatcher {
+	/** How long the mods folder must go without changes before the task is run */
+	private static final long QUIET_PERIOD_MILLIS = 2000;
+
+	/**
+	 * Start watching a mods folder on a daemon thread
+	 * @param modFolder the mods folder
+	 * @param onChange the task to run after the mods folder has changed
+	 */
+	static void start(Path modFolder, Runnable onChange) {
+		var contextClassLoader = Thread.currentThread().getContextClassLoader();
+		var thread = new Thread(() -> {
+			try (var watchService = modFolder.getFileSystem().newWatchService()) {
+				modFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				LOG.info("Watching {} for mod changes", modFolder);
+				while (true) {
+					var key = watchService.take();
+					var changed = hasJarChanges(key);
+					// Wait for the folder to settle, as jars are usually written in several steps
+					while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+						changed |= hasJarChanges(key);
+					}
+					if (!changed) continue;
+
+					LOG.info("Mods folder changed, reconverting mods in the background");
+					try {
+						onChange.run();
+					} catch (RuntimeException e) {
+						// Mods may well be in an unresolvable state halfway through being swapped out; the next change will try again
+						LOG.warn("Failed to reconvert mods in the background", e);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException ignored) {
+			} catch (IOException e) {
+				LOG.warn("Failed to watch {} for mod changes", modFolder, e);
+			}
+		}, "Steelwool mods watcher");
+		// As with the other background tasks, resources and services are looked up through the context class loader
+		thread.setContextClassLoader(contextClassLoader);
+		thread.setDaemon(true);
+		// Reconversion shouldn't take CPU time away from the running game
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Consume the events of a watch key
+	 * @param key the signalled watch key
+	 * @return whether any of the events may affect a mod jar
+	 */
+	private static boolean hasJarChanges(WatchKey key) {
+		var changed = false;
+		for (var event : key.pollEvents()) {
+			// Events were lost, so anything may have changed
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) changed = true;
+			else if (event.context() instanceof Path path && path.toString().endsWith(".jar")) changed = true;
+		}
+		key.reset();
+		return changed;
+	}
+}
@@ -0,0 +1,34 @@
+package io.github.steelwoolmc.steelwool;
+
+/**
+ * Helper class containing user-configurable options
+ *
+ * <p>Options are read from system properties (e.g. {@code -Dsteelwool.parallelConversion=true}) once, when this class is loaded.</p>
+ */
+// TODO should these go in a config file instead? system properties are awkward to set for players, but fine for server hosts
+public class Options {
+	/** Whether mod jars should be converted in parallel, rather than one at a time */
+	public static final boolean PARALLEL_CONVERSION = Boolean.getBoolean("steelwool.parallelConversion");
+	/** Whether the classes within each mod jar should be remapped in parallel; mostly useful for very large jars */
+	public static final boolean PARALLEL_CLASS_REMAPPING = Boolean.getBoolean("steelwool.parallelClassRemapping");
+	/** The number of worker threads to use for parallel conversion */
+	public static final int CONVERSION_THREADS = Math.max(1, Integer.getInteger("steelwool.conversionThreads", Runtime.getRuntime().availableProcessors()));
+	/** The maximum total size (in bytes) of mod jars being converted at the same time, when converting in parallel */
+	public static final long MAX_IN_FLIGHT_BYTES = Math.max(1, Long.getLong("steelwool.maxInFlightBytes", 512L * 1024 * 1024));
+	/** The maximum number of entries per jar that may be processed ahead of being written, when remapping classes in parallel */
+	public static final int MAX_PENDING_CLASSES = Math.max(1, Integer.getInteger("steelwool.maxPendingClasses", CONVERSION_THREADS * 4));
+	/** Whether the access wideners of all mods should be merged into a single access transformer, rather than one per mod */
+	public static final boolean MERGE_ACCESS_TRANSFORMERS = Boolean.getBoolean("steelwool.mergeAccessTransformers");
+	/** A folder containing Mojang's {@code client.txt} and {@code server.txt} mappings to use instead of downloading them, or null to download them */
+	public static final String MAPPINGS_DIR = System.getProperty("steelwool.mappingsDir");
+	/** The URL of Mojang's version manifest; can be pointed at a mirror */
+	public static final String VERSION_MANIFEST_URL = System.getProperty("steelwool.versionManifestUrl", "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json");
+	/** The timeout (in seconds) for connecting to Mojang's servers, and for each download to start */
+	public static final int DOWNLOAD_TIMEOUT = Math.max(1, Integer.getInteger("steelwool.downloadTimeout", 30));
+	/** Whether mod classes should only be remapped when they are first loaded, rather than when the mod is converted; mixin classes are still remapped up front */
+	public static final boolean LAZY_REMAPPING = Boolean.getBoolean("steelwool.lazyRemapping");
+	/** Whether launches with an unchanged mod set should reuse the resolved and converted mods from the last launch, rather than resolving them again */
+	public static final boolean MOD_SET_SNAPSHOT = Boolean.parseBoolean(System.getProperty("steelwool.modSetSnapshot", "true"));
+	/** Whether the mods folder should be watched while the game is running, so that changed mods are converted in the background ready for the next launch */
+	public static final boolean WATCH_MODS = Boolean.getBoolean("steelwool.watchMods");
+}
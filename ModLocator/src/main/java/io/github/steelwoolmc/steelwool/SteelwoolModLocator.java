@@ -2,9 +2,14 @@ package io.github.steelwoolmc.steelwool;
 
 import cpw.mods.jarhandling.JarMetadata;
 import cpw.mods.jarhandling.SecureJar;
+import io.github.steelwoolmc.steelwool.jartransform.ConversionCache;
 import io.github.steelwoolmc.steelwool.jartransform.FabricToForgeConverter;
 import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
+import io.github.steelwoolmc.steelwool.jartransform.zip.JarHandles;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipReader;
 import io.github.steelwoolmc.steelwool.modloading.EntrypointsData;
+import io.github.steelwoolmc.steelwool.modloading.ModSetSnapshot;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.impl.FabricLoaderImpl;
 import net.fabricmc.loader.impl.discovery.DirectoryModCandidateFinder;
@@ -28,11 +33,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -48,36 +59,42 @@ public class SteelwoolModLocator extends AbstractJarFileModLocator {
 	private final Path nestedJarFolder;
 	private final EntrypointsData entrypoints = EntrypointsData.createInstance();
 
-	private final Mappings.SimpleMappingData mappings;
+	private final Path snapshotPath;
+	/** The fingerprint of this launch's mod set, or null if snapshots are disabled */
+	private final String fingerprint;
+	/** The snapshot from the last launch, or null if the mod set has changed since then */
+	private final ModSetSnapshot snapshot;
+	/** Loaded in the background while Knot initializes and mods are discovered; only waited for once conversion needs it */
+	private final CompletableFuture<Mappings.SimpleMappingData> mappings;
 
 	public SteelwoolModLocator() {
 		this.modFolder = FMLPaths.MODSDIR.get();
 		this.configFolder = FMLPaths.CONFIGDIR.get();
 		this.nestedJarFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("jij"));
-		// Delete all existing JiJ files
-		// FIXME only do this for dev versions; we want caching for release - figure out how to do caching properly though
-		// FIXME don't do this *here*
-		try {
-			Files.walk(nestedJarFolder).forEach(path -> {
-				// Don't delete the root folder, just the contents
-				if (path.equals(nestedJarFolder)) return;
-				try {
-					Files.deleteIfExists(path);
-				} catch (IOException ignored) {}
-			});
-		} catch (IOException e) {
-			e.printStackTrace();
+		this.snapshotPath = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT).resolve("mod-set-snapshot.bin");
+
+		// Checked before anything else, as mappings aren't needed at all if the mod set hasn't changed
+		try (var ignored = StartupTimings.phase("snapshotLoad")) {
+			fingerprint = ModSetSnapshot.isEnabled() ? computeFingerprint() : null;
+			snapshot = fingerprint != null ? ModSetSnapshot.load(snapshotPath, fingerprint) : null;
 		}
 
+		// Started as early as possible, as generating the mappings (or even just loading them) is the slowest part of startup
+		mappings = snapshot != null ? null : runInBackground("mappings", () -> {
+			try (var ignored = StartupTimings.phase("mappingsLoad")) {
+				return Mappings.getSimpleMappingData();
+			}
+		});
+
 		Constants.LOG.info("Steelwool mod locator instantiated. Hi Forge :)");
 		Constants.LOG.info("Initializing Knot");
 		// TODO do we want to pass (some?) args?
-		var knot = new Knot(FMLEnvironment.dist.isClient() ? EnvType.CLIENT : EnvType.SERVER);
-		knot.init(new String[0]);
+		try (var ignored = StartupTimings.phase("knotInit")) {
+			var knot = new Knot(FMLEnvironment.dist.isClient() ? EnvType.CLIENT : EnvType.SERVER);
+			knot.init(new String[0]);
+		}
 		Constants.LOG.info("Knot initialized");
 
-		mappings = Mappings.getSimpleMappingData();
-
 		ModIdHack.makeForgeAcceptDashesInModids();
 	}
 
@@ -92,31 +109,101 @@ public class SteelwoolModLocator extends AbstractJarFileModLocator {
 		// TODO should take excluded into account
 		var excluded = ModDirTransformerDiscoverer.allExcluded();
 		for (var e : excluded) {
-			System.out.println("excluded = " + e);
+			LOG.debug("excluded = {}", e);
+		}
+
+		ModSetSnapshot modSet;
+		if (snapshot != null) {
+			Constants.LOG.info("Mod set unchanged since the last launch, reusing {} converted mods", snapshot.convertedJars().size());
+			modSet = snapshot;
+		} else {
+			modSet = resolveAndConvertMods(() -> join(mappings), false);
+			if (fingerprint != null) {
+				try (var ignored = StartupTimings.phase("snapshotSave")) {
+					modSet.save(snapshotPath, fingerprint);
+				}
+			}
+		}
+		modSet.entrypoints().forEach((key, entries) -> entries.forEach(entry -> entrypoints.addEntrypoint(entry.modId(), key, entry.metadata())));
+		var outputJars = new ArrayList<>(modSet.convertedJars());
+		// Add our own internal mod here so that it gets loaded
+		try (var ignored = StartupTimings.phase("internalModExtract")) {
+			outputJars.add(0, getInternalMod());
 		}
 
+		StartupTimings.writeReport();
+
+		if (Options.WATCH_MODS) {
+			if (Options.LAZY_REMAPPING) {
+				LOG.warn("Watching the mods folder is not supported with lazy remapping");
+			} else {
+				ModsFolderWatcher.start(modFolder, this::reconvertMods);
+			}
+		}
+		return outputJars.stream();
+	}
+
+	/**
+	 * Discover, resolve and convert all Fabric mods
+	 * @param mappingsSupplier supplies the intermediary->TSRG mapping data
+	 * @param background whether the mods are converted while the game is running, rather than to be loaded; if so, no loader state
+	 *                   is changed and nothing is evicted from the caches, as the running game may still be using it
+	 * @return the converted mod jars, along with the entrypoints of the resolved mods
+	 */
+	private ModSetSnapshot resolveAndConvertMods(Supplier<Mappings.SimpleMappingData> mappingsSupplier, boolean background) {
+		// Shared between nested jar extraction and conversion, so that jars that are open at the same time are only opened once
+		var jarHandles = new JarHandles();
 		List<ModCandidate> modCandidates;
 		try {
-			modCandidates = fabricLoader_resolveMods();
+			modCandidates = fabricLoader_resolveMods(jarHandles, background);
 		} catch (ModResolutionException e) {
 			throw new RuntimeException(e);
 		}
 
 		// FIXME we shouldn't be doing entrypoints here
+		var modEntrypoints = new HashMap<String, List<EntrypointsData.Entry>>();
 		modCandidates.forEach(cand -> {
 			cand.getMetadata().getEntrypointKeys().forEach(key -> {
 				cand.getMetadata().getEntrypoints(key).forEach(entrypoint -> {
-					entrypoints.addEntrypoint(key, entrypoint);
+					modEntrypoints.computeIfAbsent(key, k -> new ArrayList<>()).add(new EntrypointsData.Entry(cand.getId(), entrypoint));
 				});
 			});
 		});
 
 		Constants.LOG.info("Found {} fabric mod candidates", modCandidates.size());
 
-		var outputJars = FabricToForgeConverter.getConvertedJarPaths(modCandidates, mappings);
-		// Add our own internal mod here so that it gets loaded
-		outputJars.add(0, getInternalMod());
-		return outputJars.stream();
+		List<Path> outputJars;
+		try (var ignored = StartupTimings.phase("conversion")) {
+			outputJars = FabricToForgeConverter.getConvertedJarPaths(modCandidates, mappingsSupplier, jarHandles,
+					background ? null : SteelwoolTransformationService::setLazyRemapping, !background);
+		}
+		return new ModSetSnapshot(List.copyOf(outputJars), modEntrypoints);
+	}
+
+	/**
+	 * Resolve and convert the mods in the mods folder again while the game is running, so that the next launch finds them already converted
+	 *
+	 * <p>Only added or changed jars are actually converted, as everything else is found in the conversion cache.
+	 * Nothing is changed about the running game; cached jars of removed mods are left for the next launch that resolves mods to evict.</p>
+	 */
+	private void reconvertMods() {
+		// Fingerprinted first, so that a change made during conversion invalidates the snapshot rather than being missed
+		var newFingerprint = ModSetSnapshot.isEnabled() ? computeFingerprint() : null;
+		var modSet = resolveAndConvertMods(() -> mappings != null ? join(mappings) : Mappings.getSimpleMappingData(), true);
+		if (newFingerprint != null) modSet.save(snapshotPath, newFingerprint);
+		LOG.info("Reconverted {} mods in the background; they will be used on the next launch", modSet.convertedJars().size());
+	}
+
+	/**
+	 * @return the fingerprint of this launch's mod set, or null if it couldn't be computed
+	 */
+	private String computeFingerprint() {
+		try {
+			return ModSetSnapshot.computeFingerprint(modFolder, configFolder);
+		} catch (IOException e) {
+			LOG.warn("Failed to fingerprint the mod set, resolving mods from scratch", e);
+			return null;
+		}
 	}
 
 	/**
@@ -152,30 +239,90 @@ public class SteelwoolModLocator extends AbstractJarFileModLocator {
 	@Override
 	public void initArguments(Map<String, ?> arguments) {
 		for (var key : arguments.keySet()) {
-			System.out.println("key = " + key + ", value = " + arguments.get(key));
+			LOG.debug("key = {}, value = {}", key, arguments.get(key));
+		}
+	}
+
+	/**
+	 * Run a startup task on a background thread
+	 * @param name the name of the task, for the thread name
+	 * @param task the task to run
+	 * @return a future for the result of the task
+	 */
+	private static <T> CompletableFuture<T> runInBackground(String name, Supplier<T> task) {
+		var future = new CompletableFuture<T>();
+		var thread = new Thread(() -> {
+			try {
+				future.complete(task.get());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}, "Steelwool " + name);
+		// Resources and services are looked up through the context class loader, so keep the one the locator was loaded in
+		thread.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+		thread.setDaemon(true);
+		thread.start();
+		return future;
+	}
+
+	/**
+	 * Wait for a background startup task, rethrowing any exception it failed with
+	 * @param future the future of the task
+	 * @return the result of the task
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+			if (e.getCause() instanceof Error error) throw error;
+			throw e;
 		}
 	}
 
 	/**
-	 * Extract the internal Steelwool mod jar nested within the main jar
+	 * Extract the internal Steelwool mod jar nested within the main jar, reusing the previously extracted jar if it hasn't changed
 	 * @return the path of the extracted internal mod jar
 	 */
 	private static Path getInternalMod() {
-		// TODO define steelwoolFolder statically somewhere? (Constants?)
-		var steelwoolFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT);
-		var innerJarPath = steelwoolFolder.resolve(Constants.INNER_JAR_NAME);
-		// TODO caching
-		try (var stream = SteelwoolModLocator.class.getResourceAsStream("../../../../" + Constants.INNER_JAR_NAME)) {
-			Files.copy(stream, innerJarPath, StandardCopyOption.REPLACE_EXISTING);
+		var cacheFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("internal"));
+		var cache = new ConversionCache("internal", cacheFolder);
+		var resourceName = "../../../../" + Constants.INNER_JAR_NAME;
+		try {
+			Path innerJarPath;
+			var steelwoolJar = Utils.getSteelwoolJar();
+			if (steelwoolJar != null) {
+				// The inner jar can only change along with the Steelwool jar, so nothing has to be read while that is unchanged
+				var key = Utils.sha256(steelwoolJar.toAbsolutePath().toString(), Long.toString(Files.size(steelwoolJar)),
+						Long.toString(Files.getLastModifiedTime(steelwoolJar).toMillis()));
+				innerJarPath = cache.getOrConvert(Path.of(Constants.INNER_JAR_NAME), key, outputPath -> {
+					try (var stream = SteelwoolModLocator.class.getResourceAsStream(resourceName)) {
+						Files.copy(stream, outputPath, StandardCopyOption.REPLACE_EXISTING);
+					}
+				});
+			} else {
+				// Hashed while being copied out, so that the inner jar is only read once; the copy is discarded if it's already cached
+				var tempPath = cacheFolder.resolve(Constants.INNER_JAR_NAME + ".extract.tmp");
+				var digest = Utils.newSha256();
+				try (var stream = new DigestInputStream(SteelwoolModLocator.class.getResourceAsStream(resourceName), digest)) {
+					Files.copy(stream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+				}
+				try {
+					innerJarPath = cache.getOrConvert(Path.of(Constants.INNER_JAR_NAME), HexFormat.of().formatHex(digest.digest()),
+							outputPath -> Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING));
+				} finally {
+					Files.deleteIfExists(tempPath);
+				}
+			}
+			cache.evictUnused();
+			return innerJarPath;
 		} catch (IOException e) {
-			e.printStackTrace();
 			throw new RuntimeException("Failed to extract internal mod jar", e);
 		}
-		return innerJarPath;
 	}
 
 	// Based on FabricLoaderImpl.setup
-	private List<ModCandidate> fabricLoader_resolveMods() throws ModResolutionException {
+	private List<ModCandidate> fabricLoader_resolveMods(JarHandles jarHandles, boolean background) throws ModResolutionException {
 		boolean remapRegularMods = FabricLoaderImpl.INSTANCE.isDevelopmentEnvironment();
 		VersionOverrides versionOverrides = new VersionOverrides();
 		DependencyOverrides depOverrides = new DependencyOverrides(configFolder);
@@ -189,7 +336,10 @@ public class SteelwoolModLocator extends AbstractJarFileModLocator {
 //		discoverer.addCandidateFinder(new ArgumentModCandidateFinder(remapRegularMods));
 
 		Map<String, Set<ModCandidate>> envDisabledMods = new HashMap<>();
-		var modCandidates = discoverer.discoverMods(FabricLoaderImpl.INSTANCE, envDisabledMods);
+		List<ModCandidate> modCandidates;
+		try (var ignored = StartupTimings.phase("discovery")) {
+			modCandidates = discoverer.discoverMods(FabricLoaderImpl.INSTANCE, envDisabledMods);
+		}
 
 		LOG.info("Found {} mod candidates: {}", modCandidates.size(), modCandidates.stream().map(ModCandidate::getId).collect(Collectors.joining(", ")));
 
@@ -206,27 +356,118 @@ public class SteelwoolModLocator extends AbstractJarFileModLocator {
 
 		// resolve mods
 
-		modCandidates = ModResolver.resolve(modCandidates, FabricLoaderImpl.INSTANCE.getEnvironmentType(), envDisabledMods);
+		try (var ignored = StartupTimings.phase("resolution")) {
+			modCandidates = ModResolver.resolve(modCandidates, FabricLoaderImpl.INSTANCE.getEnvironmentType(), envDisabledMods);
+		}
 
 		// temporary hack to deal with mods JIJing parts of fabric-api
 		modCandidates = modCandidates.stream().filter(c -> !fabricApiModIds.contains(c.getId())).collect(Collectors.toList());
 
-		FabricLoaderImpl.INSTANCE.dumpModList(modCandidates);
+		// The loader's mod list describes the running game, so it is left alone when reconverting in the background
+		if (!background) FabricLoaderImpl.INSTANCE.dumpModList(modCandidates);
 
 		// TODO fabric-loader shuffles mod order in-dev unless system property DEBUG_DISABLE_MOD_SHUFFLE is set
 
 		// add mods
-		for (ModCandidate mod : modCandidates) {
-			if (!mod.hasPath() && !mod.isBuiltin()) {
-				try {
-					mod.setPaths(Collections.singletonList(mod.copyToDir(nestedJarFolder, false)));
+		try (var ignored = StartupTimings.phase("jijExtract")) {
+			extractNestedJars(modCandidates, jarHandles, !background);
+		}
+
+		return modCandidates;
+	}
+
+	/**
+	 * Extract the jars of all nested mods, reusing jars extracted by previous launches if their contents haven't changed
+	 * @param modCandidates the resolved mod candidates
+	 * @param jarHandles the jar handles to read the parent jars through
+	 * @param evictUnused whether to delete extracted jars that weren't used
+	 */
+	private void extractNestedJars(List<ModCandidate> modCandidates, JarHandles jarHandles, boolean evictUnused) {
+		var cache = new ConversionCache("jij", nestedJarFolder);
+		var pending = modCandidates.stream().filter(mod -> !mod.hasPath() && !mod.isBuiltin()).collect(Collectors.toCollection(ArrayList::new));
+		while (!pending.isEmpty()) {
+			// Jars nested within other nested jars can only be read once their parent has been extracted
+			var ready = pending.stream().filter(mod -> mod.getParentMods().stream().anyMatch(ModCandidate::hasPath)).toList();
+			if (ready.isEmpty()) ready = List.copyOf(pending);
+
+			// Grouped by parent jar, so that a parent with several nested jars is only opened once for all of them
+			var byParent = new HashMap<Path, List<ModCandidate>>();
+			ready.forEach(mod -> byParent.computeIfAbsent(getParentJar(mod), parent -> new ArrayList<>()).add(mod));
+			byParent.entrySet().parallelStream().forEach(group -> {
+				try (var handle = group.getKey() != null ? jarHandles.acquire(group.getKey()) : null) {
+					var parent = handle != null ? handle.reader() : null;
+					group.getValue().parallelStream().forEach(mod -> {
+						try {
+							mod.setPaths(Collections.singletonList(extractNestedJar(mod, parent, cache, jarHandles)));
+						} catch (IOException e) {
+							throw new RuntimeException("Error extracting mod " + mod, e);
+						}
+					});
 				} catch (IOException e) {
-					throw new RuntimeException("Error extracting mod "+mod, e);
+					throw new RuntimeException("Error opening " + group.getKey(), e);
+				}
+			});
+			pending.removeAll(ready);
+		}
+		if (evictUnused) cache.evictUnused();
+	}
+
+	/**
+	 * @param mod a nested mod
+	 * @return the jar of the first parent of the mod that can be read directly, or null if there is none
+	 */
+	private static Path getParentJar(ModCandidate mod) {
+		for (var parent : mod.getParentMods()) {
+			if (parent.hasPath() && parent.getPaths().size() == 1 && Files.isRegularFile(parent.getPaths().get(0))) return parent.getPaths().get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Extract the jar of a single nested mod into the cache, keyed by the hash of its contents
+	 * @param mod the nested mod
+	 * @param parent the jar of the mod's parent from {@link #getParentJar(ModCandidate)}, or null if there is none
+	 * @param cache the nested jar cache
+	 * @param jarHandles the jar handles to read other parent jars through, in case the jar isn't found in the first one
+	 * @return the path of the extracted jar
+	 */
+	private Path extractNestedJar(ModCandidate mod, ZipReader parent, ConversionCache cache, JarHandles jarHandles) throws IOException {
+		var cachePath = Path.of(mod.getId() + ".jar");
+		if (parent != null) {
+			var extracted = extractNestedJar(mod, parent, cache);
+			if (extracted != null) return extracted;
+			for (var otherParent : mod.getParentMods()) {
+				if (!otherParent.hasPath() || otherParent.getPaths().size() != 1 || !Files.isRegularFile(otherParent.getPaths().get(0))) continue;
+				if (otherParent.getPaths().get(0).equals(parent.getPath())) continue;
+				try (var handle = jarHandles.acquire(otherParent.getPaths().get(0))) {
+					extracted = extractNestedJar(mod, handle.reader(), cache);
+					if (extracted != null) return extracted;
 				}
 			}
 		}
 
-		return modCandidates;
+		// Fabric can still extract jars whose parent we can't read directly (e.g. ones with multiple paths), but the jar has to be written out to be hashed
+		var tempPath = mod.copyToDir(nestedJarFolder, true);
+		try {
+			return cache.getOrConvert(cachePath, Utils.sha256(tempPath), outputPath -> Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING));
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	/**
+	 * Extract the jar of a nested mod from an open parent jar
+	 * @param mod the nested mod
+	 * @param parent the parent jar; must stay open until this returns, as the nested jar is read straight from it
+	 * @param cache the nested jar cache
+	 * @return the path of the extracted jar, or null if the parent doesn't contain it
+	 */
+	private static Path extractNestedJar(ModCandidate mod, ZipReader parent, ConversionCache cache) throws IOException {
+		var entry = parent.getEntry(mod.getLocalPath());
+		if (entry == null) return null;
+		// Hashing the data as stored is enough to identify the jar, and avoids decompressing it when it's already cached
+		var key = Utils.sha256(parent.getRawData(entry));
+		return cache.getOrConvert(Path.of(mod.getId() + ".jar"), key, outputPath -> Files.write(outputPath, parent.read(entry)));
 	}
 
 	private static final List<String> fabricApiModIds = List.of(
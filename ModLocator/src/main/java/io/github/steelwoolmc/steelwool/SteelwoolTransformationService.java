@@ -0,0 +1,81 @@
+package io.github.steelwoolmc.steelwool;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.ITransformationService;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import io.github.steelwoolmc.steelwool.jartransform.LazyRemapping;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@link ITransformationService} that remaps the classes of lazily converted mods as they are loaded
+ *
+ * <p>Transformers are only requested once mod discovery has finished, so by then the locator has converted all mods
+ * and handed over their unmapped classes through {@link #setLazyRemapping(LazyRemapping)}.</p>
+ */
+public class SteelwoolTransformationService implements ITransformationService {
+	/** The lazy remapping of the mods being loaded, or null if there is none */
+	private static volatile LazyRemapping lazyRemapping;
+
+	/**
+	 * Set the lazy remapping of the mods being loaded, replacing any that was set before
+	 *
+	 * <p>ModLauncher creates the transformation service itself, so the locator can't pass this to an instance directly.</p>
+	 * @param remapping the lazy remapping
+	 */
+	public static void setLazyRemapping(LazyRemapping remapping) {
+		lazyRemapping = remapping;
+	}
+
+	@Override
+	public String name() {
+		return Constants.MOD_ID;
+	}
+
+	@Override
+	public void initialize(IEnvironment environment) {}
+
+	@Override
+	public void onLoad(IEnvironment env, Set<String> otherServices) {}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List<ITransformer> transformers() {
+		var remapping = lazyRemapping;
+		if (remapping == null || remapping.getClasses().isEmpty()) return List.of();
+		return List.of(new LazyRemappingTransformer(remapping));
+	}
+
+	/**
+	 * Remaps mod classes from intermediary to TSRG, before any other transformers (including Mixin) see them
+	 * @param remapping the lazy remapping of the mods being loaded
+	 */
+	private record LazyRemappingTransformer(LazyRemapping remapping) implements ITransformer<ClassNode> {
+		@Override
+		public ClassNode transform(ClassNode input, ITransformerVotingContext context) {
+			return remapping.remap(input);
+		}
+
+		@Override
+		public TransformerVoteResult castVote(ITransformerVotingContext context) {
+			return TransformerVoteResult.YES;
+		}
+
+		@Override
+		public Set<Target> targets() {
+			return remapping.getClasses().stream()
+					.map(name -> Target.targetPreClass(name.replace('/', '.')))
+					.collect(Collectors.toSet());
+		}
+
+		@Override
+		public String[] labels() {
+			return new String[] {Constants.MOD_ID + ":lazy_remapping"};
+		}
+	}
+}
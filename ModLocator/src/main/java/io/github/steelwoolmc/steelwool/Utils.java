@@ -2,18 +2,32 @@ package io.github.steelwoolmc.steelwool;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
 import sun.misc.Unsafe;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 /**
  * Class containing miscellaneous utils
  */
 public class Utils {
 	private static final Unsafe unsafe;
+	/** The hash of the running build, computed on first use */
+	private static volatile String buildHash;
 
 	static {
 		try {
@@ -33,6 +47,49 @@ public class Utils {
 		return unsafe;
 	}
 
+	/**
+	 * Get the jar Steelwool is running from
+	 * @return the path of the jar, or null if Steelwool wasn't loaded from a jar file on the default file system (e.g. in a development environment)
+	 */
+	public static Path getSteelwoolJar() {
+		try {
+			var codeSource = Utils.class.getProtectionDomain().getCodeSource();
+			if (codeSource == null || codeSource.getLocation() == null) return null;
+			var path = Path.of(codeSource.getLocation().toURI());
+			return Files.isRegularFile(path) ? path : null;
+		} catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get a hash identifying the build of Steelwool that is running, to invalidate cached data created by other builds
+	 *
+	 * <p>Development builds often share a version, so the version alone isn't enough. If Steelwool is running from a jar,
+	 * the jar's attributes identify the build; otherwise the ID of the sources it was built from and the embedded mappings are used.</p>
+	 * @return the hash, as a lowercase hex string
+	 */
+	public static String getBuildHash() {
+		var hash = buildHash;
+		if (hash == null) {
+			buildHash = hash = computeBuildHash();
+		}
+		return hash;
+	}
+
+	private static String computeBuildHash() {
+		var jar = getSteelwoolJar();
+		try {
+			if (jar != null) {
+				var attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+				return sha256(Constants.VERSION, jar.toString(), String.valueOf(attributes.size()), String.valueOf(attributes.lastModifiedTime().toMillis()));
+			}
+			return sha256(Constants.VERSION, Constants.BUILD_ID, Mappings.getEmbeddedMappingsHash());
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to identify the Steelwool build", e);
+		}
+	}
+
 	/**
 	 * Read JSON data from a URL
 	 * @param url the URL to read data from
@@ -43,4 +100,82 @@ public class Utils {
 			return JsonParser.parseReader(new BufferedReader(new InputStreamReader(stream)));
 		}
 	}
+
+	/**
+	 * Create a new SHA-256 message digest
+	 * @return the message digest
+	 */
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not supported", e);
+		}
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a file's contents
+	 * @param path the file to hash
+	 * @return the hash, as a lowercase hex string
+	 */
+	public static String sha256(Path path) throws IOException {
+		try (var stream = Files.newInputStream(path)) {
+			return sha256(stream);
+		}
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the remaining contents of a stream; the stream is not closed
+	 * @param stream the stream to hash
+	 * @return the hash, as a lowercase hex string
+	 */
+	public static String sha256(InputStream stream) throws IOException {
+		return digest(newSha256(), stream);
+	}
+
+	/**
+	 * Create a new SHA-1 message digest; this is only used to verify files against the hashes published by Mojang
+	 * @return the message digest
+	 */
+	public static MessageDigest newSha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-1 is not supported", e);
+		}
+	}
+
+	private static String digest(MessageDigest digest, InputStream stream) throws IOException {
+		var buffer = new byte[64 * 1024];
+		int read;
+		while ((read = stream.read(buffer)) > 0) {
+			digest.update(buffer, 0, read);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Compute the SHA-256 hash of the remaining contents of a buffer, without changing its position
+	 * @param buffer the data to hash
+	 * @return the hash, as a lowercase hex string
+	 */
+	public static String sha256(ByteBuffer buffer) {
+		var digest = newSha256();
+		digest.update(buffer.duplicate());
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Compute the SHA-256 hash of a sequence of strings
+	 * @param parts the strings to hash; these are separated so that e.g. {@code ("ab", "c")} and {@code ("a", "bc")} hash differently
+	 * @return the hash, as a lowercase hex string
+	 */
+	public static String sha256(String... parts) {
+		var digest = newSha256();
+		for (var part : parts) {
+			digest.update(part.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
 }
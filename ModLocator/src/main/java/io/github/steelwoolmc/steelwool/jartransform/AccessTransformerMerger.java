@@ -0,0 +1,113 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Merges the access transformers of several mods into a single access transformer
+ *
+ * <p>Entries for the same target (class, method, or field) are deduplicated, keeping the strongest access level
+ * and finality change requested by any mod. The mods that contributed to each target are tracked,
+ * so that they can be listed in an index alongside the merged file.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public class AccessTransformerMerger {
+	private static final String[] ACCESS_LEVELS = {"private", "default", "protected", "public"};
+
+	/** Map from targets (e.g. {@code net.minecraft.Foo m_1234_(I)V}) to merged entries; sorted so the output is stable */
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	/**
+	 * The merged access change for a single target
+	 * @param access the index of the access level in {@link #ACCESS_LEVELS}
+	 * @param finality 0 to make final ({@code +f}), 1 to leave as is, 2 to make non-final ({@code -f})
+	 * @param mods the ids of the mods that requested a change for the target
+	 */
+	private record Entry(int access, int finality, Set<String> mods) {}
+
+	/**
+	 * Add all entries of an access transformer file
+	 * @param modId the id of the mod the file belongs to
+	 * @param accessTransformer the contents of the access transformer file
+	 */
+	public void add(String modId, String accessTransformer) {
+		for (var line : accessTransformer.split("\n")) {
+			var commentIndex = line.indexOf('#');
+			if (commentIndex >= 0) line = line.substring(0, commentIndex);
+			line = line.strip();
+			if (line.isEmpty()) continue;
+
+			var parts = line.split("\\s+", 2);
+			if (parts.length != 2) {
+				LOG.warn("Skipping invalid access transformer line from {}: {}", modId, line);
+				continue;
+			}
+
+			var modifier = parts[0];
+			var finality = 1;
+			if (modifier.endsWith("-f")) finality = 2;
+			else if (modifier.endsWith("+f")) finality = 0;
+			if (finality != 1) modifier = modifier.substring(0, modifier.length() - 2);
+			var access = indexOf(ACCESS_LEVELS, modifier);
+			if (access < 0) {
+				LOG.warn("Skipping access transformer line with unknown access level from {}: {}", modId, line);
+				continue;
+			}
+
+			// Normalize whitespace, so that equivalent lines are merged
+			var target = String.join(" ", parts[1].split("\\s+"));
+			var existing = entries.get(target);
+			if (existing == null) {
+				var mods = new TreeSet<String>();
+				mods.add(modId);
+				entries.put(target, new Entry(access, finality, mods));
+			} else {
+				existing.mods().add(modId);
+				entries.put(target, new Entry(Math.max(access, existing.access()), Math.max(finality, existing.finality()), existing.mods()));
+			}
+		}
+	}
+
+	private static int indexOf(String[] array, String value) {
+		for (var i = 0; i < array.length; i++) {
+			if (array[i].equals(value)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether no entries have been added
+	 */
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * @return the merged access transformer file
+	 */
+	public String toAccessTransformer() {
+		return entries.entrySet().stream().map(entry -> {
+			var finality = switch (entry.getValue().finality()) {
+				case 0 -> "+f";
+				case 2 -> "-f";
+				default -> "";
+			};
+			return ACCESS_LEVELS[entry.getValue().access()] + finality + " " + entry.getKey();
+		}).collect(Collectors.joining("\n", "# Merged from the access wideners of all Fabric mods by Steelwool\n", "\n"));
+	}
+
+	/**
+	 * @return an index listing the mods that contributed to each target in the merged file
+	 */
+	public String toIndex() {
+		return entries.entrySet().stream()
+				.map(entry -> entry.getKey() + "\t" + String.join(",", entry.getValue().mods()))
+				.collect(Collectors.joining("\n", "", "\n"));
+	}
+}
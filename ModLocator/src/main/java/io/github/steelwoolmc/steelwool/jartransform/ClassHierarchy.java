@@ -0,0 +1,263 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Read-only index of the class hierarchy of all classes referenced by mods
+ *
+ * <p>Every class is given an int id, and the ancestors of each class are flattened into an array once, when the index is built;
+ * lookups never walk the hierarchy.</p>
+ *
+ * <p>Only classes referenced by mod classes (including the mod classes themselves) and their ancestors are indexed. Supertypes are known
+ * for mod classes and for minecraft's classes; other classes (e.g. library classes) are indexed without any ancestors.</p>
+ *
+ * <p>The index can be written to a file, so that later launches with the same inputs don't have to build it again.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class ClassHierarchy {
+	private static final int MAGIC = 0x53574849; // "SWHI"
+	/** Bump this whenever the file layout changes, so that old files are ignored */
+	private static final int FORMAT_VERSION = 1;
+
+	/** The names of all classes, sorted; the id of each class is its index */
+	private final String[] names;
+	/** The ancestors of each class, starting with the class itself, then its superclass's ancestors, then each interface's; without duplicates */
+	private final int[][] ancestors;
+
+	private ClassHierarchy(String[] names, int[][] ancestors) {
+		this.names = names;
+		this.ancestors = ancestors;
+	}
+
+	/**
+	 * @param name the internal name of a class
+	 * @return the id of the class, or -1 if it isn't in the index
+	 */
+	public int getId(String name) {
+		var id = Arrays.binarySearch(names, name);
+		return id >= 0 ? id : -1;
+	}
+
+	/**
+	 * @param id the id of a class
+	 * @return the internal name of the class
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @param name the internal name of a class
+	 * @return whether the class is in the index
+	 */
+	public boolean contains(String name) {
+		return getId(name) >= 0;
+	}
+
+	/**
+	 * Get the flattened ancestors of a class
+	 * @param name the internal name of the class
+	 * @return the names of the class and all of its ancestors, with the class itself first, or null if the class isn't in the index
+	 */
+	public String[] getAncestors(String name) {
+		var id = getId(name);
+		if (id < 0) return null;
+		var classAncestors = ancestors[id];
+		var result = new String[classAncestors.length];
+		for (var i = 0; i < classAncestors.length; i++) {
+			result[i] = names[classAncestors[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of classes in the index
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Write the index to a file, replacing any existing file
+	 * @param file the path of the file to write
+	 * @param key identifies the inputs the index was built from
+	 */
+	public void write(Path file, String key) throws IOException {
+		// Write to a temporary file first, so that a crash never leaves a truncated file behind
+		var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeUTF(key);
+			output.writeInt(names.length);
+			for (var name : names) {
+				output.writeUTF(name);
+			}
+			for (var classAncestors : ancestors) {
+				output.writeInt(classAncestors.length);
+				for (var ancestor : classAncestors) {
+					output.writeInt(ancestor);
+				}
+			}
+		}
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load an index from a file
+	 * @param file the path of the file to load
+	 * @param key identifies the inputs the index must have been built from
+	 * @return the index, or null if the file doesn't exist, is from an older format, or was built from different inputs
+	 */
+	public static ClassHierarchy read(Path file, String key) throws IOException {
+		if (!Files.isRegularFile(file)) return null;
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(key)) return null;
+			var count = input.readInt();
+			if (count < 0) throw new IOException("Corrupt class hierarchy file: " + file);
+			var names = new String[count];
+			for (var i = 0; i < count; i++) {
+				names[i] = input.readUTF();
+			}
+			var ancestors = new int[count][];
+			for (var i = 0; i < count; i++) {
+				var classAncestors = new int[input.readInt()];
+				for (var j = 0; j < classAncestors.length; j++) {
+					classAncestors[j] = input.readInt();
+					if (classAncestors[j] < 0 || classAncestors[j] >= count) throw new IOException("Corrupt class hierarchy file: " + file);
+				}
+				ancestors[i] = classAncestors;
+			}
+			return new ClassHierarchy(names, ancestors);
+		}
+	}
+
+	/**
+	 * The supertypes of a single class, as declared in its class file
+	 * @param name the internal name of the class
+	 * @param superName the internal name of the superclass, or null for module-info classes
+	 * @param interfaces the internal names of the implemented interfaces
+	 */
+	public record ClassEntry(String name, String superName, List<String> interfaces) {}
+
+	/**
+	 * Builder for {@link ClassHierarchy}; not thread-safe
+	 */
+	public static class Builder {
+		private final Map<String, ClassEntry> classes = new HashMap<>();
+		private final Set<String> referencedClasses = new HashSet<>();
+
+		/**
+		 * Add the supertypes of classes; if a class is declared more than once (e.g. a shaded library), the first declaration is used
+		 *
+		 * <p>Classes added here are only indexed if they are referenced (see {@link #addReferencedClasses(Collection)}),
+		 * or are an ancestor of a referenced class.</p>
+		 * @param entries the classes to add
+		 * @return this builder
+		 */
+		public Builder addClasses(Collection<ClassEntry> entries) {
+			for (var entry : entries) {
+				classes.putIfAbsent(entry.name(), entry);
+			}
+			return this;
+		}
+
+		/**
+		 * Add classes that must be in the index, along with their ancestors
+		 * @param names the internal names of the classes
+		 * @return this builder
+		 */
+		public Builder addReferencedClasses(Collection<String> names) {
+			referencedClasses.addAll(names);
+			return this;
+		}
+
+		/**
+		 * @return the class hierarchy index
+		 */
+		public ClassHierarchy build() {
+			// Sorted, so that ids don't depend on the order classes were added in, and so that classes can be looked up by binary search
+			var allNames = new TreeSet<String>();
+			var pending = new ArrayDeque<>(referencedClasses);
+			while (!pending.isEmpty()) {
+				var name = pending.pop();
+				if (!allNames.add(name)) continue;
+				var entry = classes.get(name);
+				if (entry == null) continue;
+				if (entry.superName() != null) pending.push(entry.superName());
+				entry.interfaces().forEach(pending::push);
+			}
+
+			var names = allNames.toArray(String[]::new);
+			var ancestors = new int[names.length][];
+			var visiting = new boolean[names.length];
+			var marks = new int[names.length];
+			for (var i = 0; i < names.length; i++) {
+				computeAncestors(i, names, ancestors, visiting, marks);
+			}
+			return new ClassHierarchy(names, ancestors);
+		}
+
+		/**
+		 * @param marks for each class, the id plus one of the class whose ancestors it was last added to; used to skip duplicates without boxing
+		 */
+		private int[] computeAncestors(int id, String[] names, int[][] ancestors, boolean[] visiting, int[] marks) {
+			if (ancestors[id] != null) return ancestors[id];
+			// Malformed jars could contain a cycle; stop there instead of overflowing the stack
+			if (visiting[id]) return new int[] {id};
+
+			var entry = classes.get(names[id]);
+			if (entry == null) {
+				ancestors[id] = new int[] {id};
+				return ancestors[id];
+			}
+			visiting[id] = true;
+
+			// The supertypes are all resolved before merging, as resolving them marks classes too
+			var supertypeAncestors = new int[entry.interfaces().size() + 1][];
+			var supertypeCount = 0;
+			var length = 1;
+			if (entry.superName() != null) {
+				supertypeAncestors[supertypeCount] = computeAncestors(Arrays.binarySearch(names, entry.superName()), names, ancestors, visiting, marks);
+				length += supertypeAncestors[supertypeCount++].length;
+			}
+			for (var iface : entry.interfaces()) {
+				supertypeAncestors[supertypeCount] = computeAncestors(Arrays.binarySearch(names, iface), names, ancestors, visiting, marks);
+				length += supertypeAncestors[supertypeCount++].length;
+			}
+
+			var result = new int[length];
+			var count = 0;
+			result[count++] = id;
+			marks[id] = id + 1;
+			for (var i = 0; i < supertypeCount; i++) {
+				for (var ancestor : supertypeAncestors[i]) {
+					if (marks[ancestor] == id + 1) continue;
+					marks[ancestor] = id + 1;
+					result[count++] = ancestor;
+				}
+			}
+
+			visiting[id] = false;
+			ancestors[id] = Arrays.copyOf(result, count);
+			return ancestors[id];
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.Utils;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Content-addressed cache of converted mod jars
+ *
+ * <p>Each converted jar is stored under a key derived from everything that affects the conversion output:
+ * the input jar, the mapping data, the Steelwool build, and the parts of the class hierarchy that the jar depends on.
+ * If any of those change, the key changes, so a cached jar is never reused when it would be converted differently.</p>
+ *
+ * <p>The same cache is also used for other jars that are derived from a known input, such as extracted nested jars.</p>
+ */
+public class ConversionCache {
+	/** Number of hex characters of the key to include in cached file names */
+	private static final int KEY_LENGTH = 16;
+
+	private final String name;
+	private final Path folder;
+	private final Set<Path> usedPaths = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param name the name of the cache, for startup timings
+	 * @param folder the folder to store converted jars in
+	 */
+	public ConversionCache(String name, Path folder) {
+		this.name = name;
+		this.folder = folder;
+	}
+
+	/**
+	 * Compute the cache key for converting a mod jar
+	 * @param jarHash the hash of the input jar
+	 * @param mappingsHash the hash of the mapping data
+	 * @param hierarchyHash the hash of the class hierarchy entries the jar depends on
+	 * @param options the options that affect the contents of the converted jar
+	 * @return the cache key
+	 */
+	public static String computeKey(String jarHash, String mappingsHash, String hierarchyHash, String options) {
+		return Utils.sha256(jarHash, mappingsHash, Utils.getBuildHash(), hierarchyHash, options);
+	}
+
+	/**
+	 * Get a converted jar from the cache, converting it if it isn't already cached
+	 * @param inputPath the path of the jar to be converted
+	 * @param key the cache key for the conversion
+	 * @param converter converts the jar, writing it to the given path
+	 * @return the path of the converted jar
+	 */
+	public Path getOrConvert(Path inputPath, String key, Converter converter) throws IOException {
+		var fileName = inputPath.getFileName().toString();
+		if (fileName.endsWith(".jar")) fileName = fileName.substring(0, fileName.length() - ".jar".length());
+		var outputPath = folder.resolve(fileName + "-" + key.substring(0, KEY_LENGTH) + ".jar");
+		usedPaths.add(outputPath);
+
+		var cached = Files.isRegularFile(outputPath);
+		StartupTimings.cacheLookup(name, inputPath.getFileName().toString(), cached);
+		if (cached) {
+			LOG.debug("Using cached {} jar for {}", name, inputPath.getFileName());
+			return outputPath;
+		}
+
+		// Convert to a temporary file first, so that an interrupted conversion never leaves a broken jar in the cache
+		var tempPath = outputPath.resolveSibling(outputPath.getFileName() + ".tmp");
+		Files.deleteIfExists(tempPath);
+		try {
+			converter.convert(tempPath);
+			Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+		return outputPath;
+	}
+
+	/**
+	 * Delete all files in the cache that were not used by this launch, as their inputs have changed or been removed
+	 */
+	public void evictUnused() {
+		try (var files = Files.list(folder)) {
+			files.filter(path -> !usedPaths.contains(path)).forEach(path -> {
+				try {
+					Files.deleteIfExists(path);
+					LOG.debug("Evicted stale {} jar {}", name, path.getFileName());
+				} catch (IOException e) {
+					LOG.warn("Failed to delete stale {} jar {}", name, path.getFileName());
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Failed to clean up {} cache", name, e);
+		}
+	}
+
+	/**
+	 * Converts a jar, writing the output to a given path
+	 */
+	@FunctionalInterface
+	public interface Converter {
+		void convert(Path outputPath) throws IOException;
+	}
+}
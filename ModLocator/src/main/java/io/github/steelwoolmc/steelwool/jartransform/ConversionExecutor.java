@@ -0,0 +1,133 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.Options;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Runs the per-jar stages of mod conversion, either sequentially on the calling thread or in parallel on a work-stealing pool
+ *
+ * <p>Work within a single jar (currently class remapping) can also be run on the pool, independently of whether jars themselves are
+ * converted in parallel; with both enabled, workers waiting on their own jar's classes help out with other queued work.</p>
+ *
+ * <p>In parallel mode, the total weight (normally the jar size) of the tasks that are running at the same time is capped,
+ * so that peak memory usage stays predictable regardless of the number of worker threads.
+ * Results are always returned in the same order as the inputs.</p>
+ */
+public class ConversionExecutor implements AutoCloseable {
+	private final ForkJoinPool pool;
+	private final boolean parallelJars;
+	private final boolean parallelClasses;
+	private final long maxInFlight;
+	private long inFlight = 0;
+
+	private ConversionExecutor(ForkJoinPool pool, boolean parallelJars, boolean parallelClasses, long maxInFlight) {
+		this.pool = pool;
+		this.parallelJars = parallelJars;
+		this.parallelClasses = parallelClasses;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Create an executor based on the user's options
+	 * @return a parallel executor if parallel conversion or class remapping is enabled, otherwise a sequential one
+	 */
+	public static ConversionExecutor create() {
+		if (Options.PARALLEL_CONVERSION || Options.PARALLEL_CLASS_REMAPPING) {
+			LOG.info("Converting mods in parallel (jars: {}, classes: {}), using {} threads",
+					Options.PARALLEL_CONVERSION, Options.PARALLEL_CLASS_REMAPPING, Options.CONVERSION_THREADS);
+			return new ConversionExecutor(new ForkJoinPool(Options.CONVERSION_THREADS),
+					Options.PARALLEL_CONVERSION, Options.PARALLEL_CLASS_REMAPPING, Options.MAX_IN_FLIGHT_BYTES);
+		}
+		return new ConversionExecutor(null, false, false, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Submit a single task from within a jar's conversion; this is run on the pool if parallel class remapping is enabled,
+	 * otherwise it is run immediately on the calling thread
+	 * @param task the task to run
+	 * @return the future result of the task
+	 */
+	public <R> Future<R> submit(Callable<R> task) {
+		if (parallelClasses) {
+			return pool.submit(task);
+		}
+		try {
+			return CompletableFuture.completedFuture(task.call());
+		} catch (Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Apply a function to each input, in parallel if enabled
+	 * @param inputs the inputs to process
+	 * @param weigher gives the weight (e.g. file size) of an input, to limit the amount of data being processed at once
+	 * @param function the function to apply to each input
+	 * @return the results, in the same order as the inputs
+	 */
+	public <T, R> List<R> map(List<T> inputs, ToLongFunction<T> weigher, Function<T, R> function) {
+		var results = new ArrayList<R>(inputs.size());
+		if (!parallelJars) {
+			for (var input : inputs) {
+				results.add(function.apply(input));
+			}
+			return results;
+		}
+
+		var tasks = new ArrayList<ForkJoinTask<R>>(inputs.size());
+		try {
+			for (var input : inputs) {
+				// Inputs larger than the limit are still allowed to run, just not alongside anything else
+				var weight = Math.min(Math.max(weigher.applyAsLong(input), 0), maxInFlight);
+				// Acquire on the submitting thread, so that worker threads never block waiting for memory
+				acquire(weight);
+				tasks.add(pool.submit(() -> {
+					try {
+						return function.apply(input);
+					} finally {
+						release(weight);
+					}
+				}));
+			}
+			for (var task : tasks) {
+				results.add(task.join());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			tasks.forEach(task -> task.cancel(true));
+			throw new RuntimeException("Interrupted while converting mods", e);
+		} catch (RuntimeException e) {
+			tasks.forEach(task -> task.cancel(true));
+			throw e;
+		}
+		return results;
+	}
+
+	private synchronized void acquire(long weight) throws InterruptedException {
+		while (inFlight > 0 && inFlight + weight > maxInFlight) {
+			wait();
+		}
+		inFlight += weight;
+	}
+
+	private synchronized void release(long weight) {
+		inFlight -= weight;
+		notifyAll();
+	}
+
+	@Override
+	public void close() {
+		if (pool != null) pool.shutdownNow();
+	}
+}
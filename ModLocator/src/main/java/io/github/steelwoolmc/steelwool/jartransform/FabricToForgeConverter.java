@@ -2,39 +2,55 @@ package io.github.steelwoolmc.steelwool.jartransform;
 
 import com.electronwill.nightconfig.core.Config;
 import com.electronwill.nightconfig.toml.TomlWriter;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import io.github.steelwoolmc.steelwool.Constants;
+import io.github.steelwoolmc.steelwool.Options;
+import io.github.steelwoolmc.steelwool.Utils;
 import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
+import io.github.steelwoolmc.steelwool.jartransform.zip.JarHandles;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipReader;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipWriter;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.api.metadata.Person;
 import net.fabricmc.loader.impl.discovery.ModCandidate;
 import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
 import net.minecraftforge.fml.loading.FMLEnvironment;
+import net.minecraftforge.fml.loading.FMLLoader;
 import net.minecraftforge.fml.loading.FMLPaths;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.Remapper;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static io.github.steelwoolmc.steelwool.Constants.LOG;
 
@@ -42,198 +58,588 @@ import static io.github.steelwoolmc.steelwool.Constants.LOG;
  * Class for converting Fabric mod jars to mod jars that can be loaded by Forge
  */
 public class FabricToForgeConverter {
-	// TODO multithreading for jar conversion? I'm not sure how slow it'll end up being once we can actually handle large/many mods
+	/** The constant pool tags for class, name and type, and method type constants; not exposed by ASM */
+	private static final int CONSTANT_CLASS_TAG = 7;
+	private static final int CONSTANT_NAME_AND_TYPE_TAG = 12;
+	private static final int CONSTANT_METHOD_TYPE_TAG = 16;
+	private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+	private static final String MODS_TOML_NAME = "META-INF/mods.toml";
+	private static final String ACCESS_TRANSFORMER_NAME = "META-INF/accesstransformer.cfg";
+	/** Where converted access wideners are stored instead, when they are merged into a single access transformer */
+	private static final String UNMERGED_ACCESS_TRANSFORMER_NAME = "META-INF/steelwool/accesstransformer.cfg";
+	private static final String MERGED_ACCESS_TRANSFORMER_MOD_ID = "steelwool_access_transformers";
 
 	/**
 	 * Given a list of {@link ModCandidate}s, convert the mod jars from Fabric to Forge and return a list of Forge jar paths
 	 * @param modCandidates the ModCandidates to be transformed
-	 * @param mappings the intermediary->TSRG mapping data
+	 * @param mappingsSupplier supplies the intermediary->TSRG mapping data; this is only called once the jars have been scanned,
+	 *                         so that the mappings can still be loading in the meantime
+	 * @param jarHandles the jar handles to read the input and converted jars through
+	 * @param lazyRemappingConsumer receives the classes that still have to be remapped when lazy remapping is enabled,
+	 *                              or null if they aren't needed (in which case they aren't collected)
+	 * @param evictUnused whether to delete cached jars and scans that weren't used; only a conversion of the mods being loaded
+	 *                    knows which ones are still needed
 	 * @return a list of Forge jar paths
 	 */
-	public static List<Path> getConvertedJarPaths(List<ModCandidate> modCandidates, Mappings.SimpleMappingData mappings) {
+	public static List<Path> getConvertedJarPaths(List<ModCandidate> modCandidates, Supplier<Mappings.SimpleMappingData> mappingsSupplier, JarHandles jarHandles,
+												  Consumer<LazyRemapping> lazyRemappingConsumer, boolean evictUnused) {
 		var modsOutputFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("mods"));
-
-		// Delete all existing mod files
-		// FIXME only do this for dev versions; we want caching for release - figure out how to do caching properly though
-		try {
-			Files.walk(modsOutputFolder).forEach(path -> {
-				// Don't delete the root folder, just the contents
-				if (path.equals(modsOutputFolder)) return;
-				try {
-					Files.deleteIfExists(path);
-				} catch (IOException ignored) {}
+		var cache = new ConversionCache("mods", modsOutputFolder);
+		var scanCache = new JarScanCache(FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("hierarchy")));
+
+		var candidates = modCandidates.stream()
+				.filter(candidate -> !candidate.isBuiltin())
+				// TODO why is this one not marked builtin? does fabric not do that or did we break something
+				.filter(candidate -> !candidate.getId().equals("fabricloader"))
+				.toList();
+
+		List<Path> outputJars;
+		try (var executor = ConversionExecutor.create()) {
+			// Jars are closed again after scanning, as every jar has to be scanned before any can be transformed;
+			// keeping them all open in between would defeat the limit on how much data is in flight at once.
+			// Jars that weren't scanned before are new or have changed, so they have to be converted as well; those are kept open
+			// (up to that same limit), so that they don't have to be read again
+			var keptOpenBytes = new AtomicLong();
+			var scannedJars = executor.map(candidates, FabricToForgeConverter::getJarSize, candidate -> {
+				var jarPath = candidate.getPaths().get(0);
+				try (var ignored = StartupTimings.phase("hierarchyScan", candidate.getId())) {
+					var handle = jarHandles.acquire(jarPath);
+					var keepOpen = false;
+					try {
+						var input = handle.reader();
+						var jarHash = Utils.sha256(input.getData());
+						var scan = scanCache.get(jarHash);
+						if (scan == null) {
+							scan = scanJar(input);
+							scanCache.put(jarHash, scan);
+							keepOpen = keptOpenBytes.addAndGet(input.getSize()) <= Options.MAX_IN_FLIGHT_BYTES;
+						}
+						return new ScannedJar(candidate, input.getSize(), jarHash, scan, keepOpen ? handle : null);
+					} finally {
+						if (!keepOpen) handle.close();
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(String.format("Failed to transform mod jar for %s", candidate.getMetadata().getId()), e);
+				}
 			});
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
 
-		var outputJars = new ArrayList<Path>();
+			Mappings.SimpleMappingData mappings;
+			Mappings.SteelwoolRemapper remapper;
+			List<ConvertedJar> convertedJars;
+			try {
+				try (var ignored = StartupTimings.phase("mappingsWait")) {
+					mappings = mappingsSupplier.get();
+				}
 
-		Map<String, ClassData> classes = new HashMap<>();
+				ClassHierarchy hierarchy;
+				try (var ignored = StartupTimings.phase("hierarchyBuild")) {
+					hierarchy = getClassHierarchy(scannedJars, mappings, scanCache);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to build the class hierarchy", e);
+				}
 
-		for (var candidate : modCandidates) {
-			if (candidate.isBuiltin()) continue;
-			if (candidate.getId().equals("fabricloader")) continue;
-			try {
-				collectClassHierarchy(classes, candidate.getPaths().get(0));
-			} catch (IOException | URISyntaxException e) {
-				throw new RuntimeException(String.format("Failed to transform mod jar for %s", candidate.getMetadata().getId()), e);
+				remapper = new Mappings.SteelwoolRemapper(mappings, hierarchy);
+
+				convertedJars = executor.map(scannedJars, ScannedJar::size, jar -> {
+					var candidate = jar.candidate();
+					var jarPath = candidate.getPaths().get(0);
+					var key = ConversionCache.computeKey(jar.jarHash(), mappings.hash(), hashHierarchy(hierarchy, jar.scan().referencedClasses()), getConversionOptions());
+					try {
+						// Only opened again if the jar actually has to be converted and wasn't kept open since scanning
+						var outputPath = cache.getOrConvert(jarPath, key, path -> {
+							try (var ignored = StartupTimings.phase("transform", candidate.getId()); var handle = jarHandles.acquire(jarPath)) {
+								transformJar(handle.reader(), path, mappings, remapper, candidate.getMetadata(), executor);
+							}
+						});
+						return new ConvertedJar(outputPath, key);
+					} catch (IOException e) {
+						throw new RuntimeException(String.format("Failed to transform mod jar for %s", candidate.getMetadata().getId()), e);
+					} finally {
+						jar.closeHandle();
+					}
+				});
+			} finally {
+				// Normally already closed once each jar has been converted, but not if anything failed before that
+				scannedJars.forEach(ScannedJar::closeHandle);
+			}
+
+			outputJars = convertedJars.stream().map(ConvertedJar::path).toList();
+
+			if (Options.LAZY_REMAPPING && lazyRemappingConsumer != null) {
+				try (var ignored = StartupTimings.phase("lazyClassIndex")) {
+					lazyRemappingConsumer.accept(LazyRemapping.create(remapper, outputJars, convertedJars.stream().map(ConvertedJar::key).toList(), jarHandles));
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to read lazily remapped classes", e);
+				}
 			}
 		}
 
-		var remapper = new Mappings.SteelwoolRemapper(mappings, classes);
+		var result = new ArrayList<>(outputJars);
+		if (Options.MERGE_ACCESS_TRANSFORMERS) {
+			try (var ignored = StartupTimings.phase("accessTransformerMerge")) {
+				var mergedJar = mergeAccessTransformers(candidates, outputJars, cache, jarHandles);
+				if (mergedJar != null) result.add(mergedJar);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to merge access transformers", e);
+			}
+		}
 
-		for (var candidate : modCandidates) {
-			if (candidate.isBuiltin()) continue;
-			// TODO why is this one not marked builtin? does fabric not do that or did we break something
-			if (candidate.getId().equals("fabricloader")) continue;
-			var outputPath = modsOutputFolder.resolve(candidate.getPaths().get(0).getFileName());
-			try {
-				transformJar(candidate.getPaths().get(0), outputPath, mappings, remapper, candidate.getMetadata());
-				outputJars.add(outputPath);
-			} catch (IOException | URISyntaxException e) {
-				throw new RuntimeException(String.format("Failed to transform mod jar for %s", candidate.getMetadata().getId()), e);
+		if (evictUnused) {
+			cache.evictUnused();
+			scanCache.evictUnused();
+		}
+		return result;
+	}
+
+	/**
+	 * Merge the converted access wideners of all mods into a single access transformer, in a jar of its own
+	 *
+	 * <p>Also writes an index of which mods contributed to each entry to the Steelwool folder.</p>
+	 * @param candidates the mod candidates that were converted
+	 * @param convertedJars the converted jar of each candidate, in the same order
+	 * @param cache the converted mod cache to store the jar in
+	 * @param jarHandles the jar handles to read the converted jars through
+	 * @return the path of the jar containing the merged access transformer, or null if no mod has an access widener
+	 */
+	private static Path mergeAccessTransformers(List<ModCandidate> candidates, List<Path> convertedJars, ConversionCache cache, JarHandles jarHandles) throws IOException {
+		var merger = new AccessTransformerMerger();
+		for (var i = 0; i < candidates.size(); i++) {
+			// Read back from the converted jars, so that this works the same for jars that came from the cache
+			try (var handle = jarHandles.acquire(convertedJars.get(i))) {
+				var jar = handle.reader();
+				var entry = jar.getEntry(UNMERGED_ACCESS_TRANSFORMER_NAME);
+				if (entry != null) merger.add(candidates.get(i).getId(), new String(jar.read(entry), StandardCharsets.UTF_8));
 			}
 		}
-		return outputJars;
+
+		var indexPath = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT).resolve("accesstransformer-index.txt");
+		if (merger.isEmpty()) {
+			Files.deleteIfExists(indexPath);
+			return null;
+		}
+		Files.writeString(indexPath, merger.toIndex());
+
+		var accessTransformer = merger.toAccessTransformer();
+		var key = Utils.sha256(Constants.VERSION, accessTransformer);
+		return cache.getOrConvert(Path.of(MERGED_ACCESS_TRANSFORMER_MOD_ID + ".jar"), key, outputPath -> {
+			try (var output = ZipWriter.create(outputPath)) {
+				var manifest = new Manifest();
+				manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+				manifest.getMainAttributes().putValue("Transformed-With-Steelwool", Constants.VERSION);
+				var manifestData = new ByteArrayOutputStream();
+				manifest.write(manifestData);
+				output.write(MANIFEST_NAME, manifestData.toByteArray());
+
+				Config.setInsertionOrderPreserved(true);
+				var config = Config.inMemory();
+				config.set("modLoader", "javafml");
+				config.set("loaderVersion", "[40,)");
+				config.set("license", "N/A");
+				var modEntry = Config.inMemory();
+				modEntry.set("modId", MERGED_ACCESS_TRANSFORMER_MOD_ID);
+				modEntry.set("version", Constants.VERSION);
+				modEntry.set("displayName", "Steelwool Access Transformers");
+				modEntry.set("description", "The access wideners of all Fabric mods, merged into a single access transformer");
+				config.set("mods", List.of(modEntry));
+				output.write(MODS_TOML_NAME, new TomlWriter().writeToString(config).getBytes(StandardCharsets.UTF_8));
+
+				output.write(ACCESS_TRANSFORMER_NAME, accessTransformer.getBytes(StandardCharsets.UTF_8));
+				var dummyModClassName = "io/github/steelwoolmc/steelwool/generated/" + MERGED_ACCESS_TRANSFORMER_MOD_ID + "/Mod";
+				output.write(dummyModClassName + ".class", generateDummyModClass(dummyModClassName, MERGED_ACCESS_TRANSFORMER_MOD_ID));
+				output.write("pack.mcmeta", generatePackMcmeta(MERGED_ACCESS_TRANSFORMER_MOD_ID));
+			}
+		});
 	}
 
-	// FIXME class hierarchy stuff should be refactored into a separate file
-	public static class ClassData {
-		String name;
-		ClassData parent;
-		List<ClassData> interfaces;
+	/**
+	 * @return the options that affect the contents of converted jars, for the cache key
+	 */
+	private static String getConversionOptions() {
+		var options = new ArrayList<String>();
+		// The mixin configs, and so the manifest and mods.toml, depend on the side
+		options.add("dist=" + FMLEnvironment.dist);
+		if (Options.MERGE_ACCESS_TRANSFORMERS) options.add("mergeAccessTransformers");
+		if (Options.LAZY_REMAPPING) options.add("lazyRemapping");
+		return String.join(",", options);
+	}
 
-		ClassData(String name) {
-			this.name = name;
-			this.parent = null;
-			this.interfaces = new ArrayList<>();
+	/**
+	 * A mod jar whose class hierarchy data has been collected
+	 * @param candidate the mod candidate of the jar
+	 * @param size the size of the jar in bytes
+	 * @param jarHash the hash of the jar file
+	 * @param scan the class hierarchy data of the jar
+	 * @param handle the handle to the jar if it was kept open to be converted, otherwise null
+	 */
+	private record ScannedJar(ModCandidate candidate, long size, String jarHash, JarScanCache.ScanResult scan, JarHandles.Handle handle) {
+		/**
+		 * Close the handle kept open since scanning, if any
+		 */
+		void closeHandle() {
+			if (handle != null) handle.close();
 		}
+	}
+
+	/**
+	 * A converted mod jar
+	 * @param path the path of the converted jar
+	 * @param key the conversion cache key of the jar
+	 */
+	private record ConvertedJar(Path path, String key) {}
+
+	/**
+	 * Get the size of a mod candidate's jar, used to limit how much data is converted at once
+	 * @param candidate the mod candidate
+	 * @return the size of the candidate's jar in bytes, or 0 if it could not be determined
+	 */
+	private static long getJarSize(ModCandidate candidate) {
+		try {
+			return Files.size(candidate.getPaths().get(0));
+		} catch (IOException e) {
+			return 0;
+		}
+	}
 
-		boolean doesExtend(String name) {
-			if (this.name.equals(name)) return true;
-			if (this.parent != null && this.parent.doesExtend(name)) return true;
-			return interfaces.stream().anyMatch(c -> c.doesExtend(name));
+	/**
+	 * Hash the class hierarchy entries for a set of classes, so that cached conversions can be invalidated when any of them change
+	 * @param hierarchy the class hierarchy
+	 * @param classNames the names of the classes to hash the hierarchy of
+	 * @return the hash
+	 */
+	private static String hashHierarchy(ClassHierarchy hierarchy, Set<String> classNames) {
+		var entries = classNames.stream()
+				.sorted()
+				.map(hierarchy::getAncestors)
+				.filter(Objects::nonNull)
+				.map(ancestors -> String.join(",", ancestors))
+				.toArray(String[]::new);
+		return Utils.sha256(entries);
+	}
+
+	/**
+	 * Get the class hierarchy index of the mods, reusing the index from the previous launch if it was built from the same inputs
+	 * @param scannedJars the scanned mod jars
+	 * @param mappings the intermediary->TSRG mapping data
+	 * @param scanCache the cache to store the scanned minecraft classes in
+	 * @return the class hierarchy index
+	 */
+	private static ClassHierarchy getClassHierarchy(List<ScannedJar> scannedJars, Mappings.SimpleMappingData mappings, JarScanCache scanCache) throws IOException {
+		var minecraftJars = getMinecraftJars();
+		var minecraftKey = hashMinecraftJars(minecraftJars, mappings);
+		var key = Utils.sha256(Utils.getBuildHash(), minecraftKey, scannedJars.stream().map(ScannedJar::jarHash).collect(Collectors.joining(",")));
+		var indexPath = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT).resolve("hierarchy.bin");
+		// The minecraft scan isn't read when the index is reused, but it's still needed as soon as the mod set changes
+		scanCache.markUsed(minecraftKey);
+		try {
+			var cached = ClassHierarchy.read(indexPath, key);
+			StartupTimings.cacheLookup("hierarchyIndex", key, cached != null);
+			if (cached != null) return cached;
+		} catch (IOException e) {
+			LOG.warn("Failed to read cached class hierarchy index, rebuilding it", e);
 		}
 
-		private void getHierarchy(Stream.Builder<String> stream) {
-			stream.add(this.name);
-			if (this.parent != null) this.parent.getHierarchy(stream);
-			this.interfaces.forEach(c -> c.getHierarchy(stream));
+		var minecraftScan = scanCache.get(minecraftKey);
+		if (minecraftScan == null) {
+			minecraftScan = scanMinecraftJars(minecraftJars, mappings);
+			scanCache.put(minecraftKey, minecraftScan);
 		}
 
-		public Stream<String> getHierarchy() {
-			Stream.Builder<String> stream = Stream.builder();
-			getHierarchy(stream);
-			return stream.build();
+		// Minecraft's classes come first, as those are the ones that are actually loaded;
+		// mods are added in candidate order, so that the result doesn't depend on which jars were scanned first
+		var builder = new ClassHierarchy.Builder().addClasses(minecraftScan.classes());
+		scannedJars.forEach(jar -> builder.addClasses(jar.scan().classes()).addReferencedClasses(jar.scan().referencedClasses()));
+		var hierarchy = builder.build();
+		try {
+			hierarchy.write(indexPath, key);
+		} catch (IOException e) {
+			// Not fatal, the index will just be built again next launch
+			LOG.warn("Failed to cache class hierarchy index", e);
 		}
+		return hierarchy;
 	}
 
-	private static void collectClassHierarchy(Map<String, ClassData> classes, Path jarPath) throws URISyntaxException, IOException {
-		URI jarUri = new URI("jar:"+jarPath.toUri());
-		try (var fs = FileSystems.newFileSystem(jarUri, Map.of())) {
-			Files.walkFileTree(fs.getPath("/"), new SimpleFileVisitor<>() {
-				@Override
-				public FileVisitResult visitFile(Path oldFile, BasicFileAttributes attrs) throws IOException {
-					var fileString = oldFile.toString();
-					if (shouldSkip(fileString)) return FileVisitResult.SKIP_SUBTREE;
-
-					if (fileString.endsWith(".class")) {
-						var classReader = new ClassReader(Files.readAllBytes(oldFile));
-						var className = classReader.getClassName();
-						var classData = classes.computeIfAbsent(className, ClassData::new);
-						var superName = classReader.getSuperName();
-						classData.parent = classes.computeIfAbsent(superName, ClassData::new);
-						var ifaces = classReader.getInterfaces();
-						for (var iface : ifaces) {
-							var ifaceData = classes.computeIfAbsent(iface, ClassData::new);
-							classData.interfaces.add(ifaceData);
-						}
-					}
+	/**
+	 * @return the jars containing minecraft's classes, or an empty list outside of a normal Forge launch (e.g. in benchmarks)
+	 */
+	private static List<Path> getMinecraftJars() {
+		var launchHandler = FMLLoader.getLaunchHandler();
+		if (launchHandler == null) return List.of();
+		// In a development environment some of these may be folders, which aren't read; classes from them just have unknown supertypes
+		return launchHandler.getMinecraftPaths().minecraftPaths().stream().filter(Files::isRegularFile).toList();
+	}
 
-					return FileVisitResult.CONTINUE;
+	/**
+	 * Hash the minecraft jars by their paths, sizes and modification times rather than their contents, as they are large and rarely change
+	 * @param minecraftJars the jars containing minecraft's classes
+	 * @param mappings the intermediary->TSRG mapping data, which the scanned classes are renamed with
+	 * @return the hash
+	 */
+	private static String hashMinecraftJars(List<Path> minecraftJars, Mappings.SimpleMappingData mappings) throws IOException {
+		var parts = new ArrayList<String>();
+		parts.add(mappings.hash());
+		for (var jar : minecraftJars) {
+			parts.add(jar.toAbsolutePath().toString());
+			parts.add(Long.toString(Files.size(jar)));
+			parts.add(Long.toString(Files.getLastModifiedTime(jar).toMillis()));
+		}
+		return Utils.sha256(parts.toArray(String[]::new));
+	}
+
+	/**
+	 * Collect the supertypes of minecraft's classes, renamed to intermediary so that they match the names used by mods
+	 *
+	 * <p>Classes that aren't in the mappings (e.g. Forge's own classes) are left out, as mods can't reference them.</p>
+	 * @param minecraftJars the jars containing minecraft's classes; if a class is in more than one, the first is used
+	 * @param mappings the intermediary->TSRG mapping data
+	 * @return the minecraft classes; no referenced classes are collected
+	 */
+	private static JarScanCache.ScanResult scanMinecraftJars(List<Path> minecraftJars, Mappings.SimpleMappingData mappings) throws IOException {
+		var intermediaryNames = new HashMap<String, String>(mappings.classes().size() * 2);
+		for (var i = 0; i < mappings.classes().size(); i++) {
+			intermediaryNames.put(mappings.classes().getValue(i), mappings.classes().getKey(i));
+		}
+
+		var classes = new ArrayList<ClassHierarchy.ClassEntry>();
+		var seen = new HashSet<String>();
+		for (var jar : minecraftJars) {
+			try (var input = ZipReader.open(jar)) {
+				for (var entry : input.getEntries()) {
+					var name = entry.name();
+					if (!name.endsWith(".class")) continue;
+					var className = intermediaryNames.get(name.substring(0, name.length() - ".class".length()));
+					if (className == null || !seen.add(className)) continue;
+
+					var classReader = new ClassReader(input.read(entry));
+					var superName = classReader.getSuperName() != null ? intermediaryNames.getOrDefault(classReader.getSuperName(), classReader.getSuperName()) : null;
+					var interfaces = Arrays.stream(classReader.getInterfaces()).map(iface -> intermediaryNames.getOrDefault(iface, iface)).toList();
+					classes.add(new ClassHierarchy.ClassEntry(className, superName, interfaces));
 				}
-			});
+			}
+		}
+		return new JarScanCache.ScanResult(classes, Set.of());
+	}
+
+	/**
+	 * Collect the class hierarchy data of all classes within a jar
+	 * @param input the jar
+	 * @return the classes declared by the jar, and the names of all classes declared or referenced by them
+	 */
+	// Package-private for benchmarks
+	static JarScanCache.ScanResult scanJar(ZipReader input) throws IOException {
+		var classes = new ArrayList<ClassHierarchy.ClassEntry>();
+		var referencedClasses = new HashSet<String>();
+		for (var entry : input.getEntries()) {
+			var name = entry.name();
+			if (shouldSkip(name) || !name.endsWith(".class")) continue;
+
+			// Only the constant pool and class header are parsed here, not the rest of the class
+			var classReader = new ClassReader(input.read(entry));
+			var className = classReader.getClassName();
+			referencedClasses.add(className);
+			collectReferencedClasses(classReader, referencedClasses);
+			// The super name is null for module-info classes
+			classes.add(new ClassHierarchy.ClassEntry(className, classReader.getSuperName(), List.of(classReader.getInterfaces())));
+		}
+		return new JarScanCache.ScanResult(classes, referencedClasses);
+	}
+
+	/**
+	 * Collect the names of all classes referenced in a class's constant pool: method and field owners, and the types in the descriptors
+	 * of referenced members, invokedynamic call sites and method type constants
+	 *
+	 * <p>Descriptor types matter as well as owners, as e.g. the name of a lambda's interface method is remapped based on the interface,
+	 * which only appears as the return type of the call site's descriptor. Method handle constants refer to a member reference,
+	 * so their owners and descriptors are covered by the other constants.</p>
+	 * @param classReader the class to read
+	 * @param referencedClasses the set to add class names to
+	 */
+	private static void collectReferencedClasses(ClassReader classReader, Set<String> referencedClasses) {
+		var buffer = new char[classReader.getMaxStringLength()];
+		for (int i = 1; i < classReader.getItemCount(); i++) {
+			var offset = classReader.getItem(i);
+			// The tag byte comes directly before each constant; the second slot of long/double constants has no offset
+			if (offset <= 0) continue;
+			switch (classReader.readByte(offset - 1)) {
+				case CONSTANT_CLASS_TAG -> referencedClasses.add(classReader.readUTF8(offset, buffer));
+				case CONSTANT_NAME_AND_TYPE_TAG -> collectDescriptorClasses(classReader.readUTF8(offset + 2, buffer), referencedClasses);
+				case CONSTANT_METHOD_TYPE_TAG -> collectDescriptorClasses(classReader.readUTF8(offset, buffer), referencedClasses);
+				default -> { }
+			}
+		}
+	}
+
+	/**
+	 * Collect the names of the object types in a field or method descriptor
+	 * @param descriptor the descriptor
+	 * @param referencedClasses the set to add class names to
+	 */
+	private static void collectDescriptorClasses(String descriptor, Set<String> referencedClasses) {
+		var i = 0;
+		while (i < descriptor.length()) {
+			if (descriptor.charAt(i) != 'L') {
+				i++;
+				continue;
+			}
+			var end = descriptor.indexOf(';', i);
+			if (end < 0) return;
+			referencedClasses.add(descriptor.substring(i + 1, end));
+			i = end + 1;
 		}
 	}
 
+	/**
+	 * @param path the name of a jar entry, without a leading {@code /}
+	 * @return whether the entry should be left out of the converted jar
+	 */
 	private static boolean shouldSkip(String path) {
-		if (path.startsWith("/com/electronwill/nightconfig")) return true;
+		if (path.startsWith("com/electronwill/nightconfig")) return true;
 		return false;
 	}
 
 	/**
 	 * Transform a Fabric mod jar into a Forge mod jar
-	 * @param inputPath the path of the fabric mod jar
+	 *
+	 * <p>Only classes, refmaps and the access widener are decompressed and rewritten; every other entry is copied into the new jar as-is,
+	 * without being decompressed and recompressed. With lazy remapping, classes outside of mixin packages are copied as-is too,
+	 * and are remapped through {@link LazyRemapping} once they are loaded.</p>
+	 * @param input the fabric mod jar
 	 * @param outputPath the path to create the forge mod jar
 	 * @param mappings the intermediary->TSRG mapping data
 	 * @param remapper the ASM remapper to be used for remapping mod classes
 	 * @param fabricData the fabric mod metadata of the mod
+	 * @param executor the executor to remap classes on
 	 */
-	private static void transformJar(Path inputPath, Path outputPath, Mappings.SimpleMappingData mappings, Remapper remapper, LoaderModMetadata fabricData) throws URISyntaxException, IOException {
-		URI originalJarUri = new URI("jar:"+inputPath.toUri());
-		URI remappedJarUri = new URI("jar:"+outputPath.toUri());
-		try(var oldFs = FileSystems.newFileSystem(originalJarUri, Map.of()); var newFs = FileSystems.newFileSystem(remappedJarUri, Map.of("create", "true"))) {
-			var accessWidenerPath = fabricData.getAccessWidener() != null ? oldFs.getPath(fabricData.getAccessWidener()) : null;
-			var accessWidenerOutputPath = newFs.getPath("/META-INF/accesstransformer.cfg");
-			// Create META-INF immediately if it doesn't exist
-			Files.createDirectories(newFs.getPath("/META-INF"));
-			Files.walkFileTree(oldFs.getPath("/"), new SimpleFileVisitor<>() {
-				@Override
-				public FileVisitResult visitFile(Path oldFile, BasicFileAttributes attrs) throws IOException {
-					var fileString = oldFile.toString();
-					var newFile = newFs.getPath(fileString);
-					if (shouldSkip(fileString)) return FileVisitResult.SKIP_SUBTREE;
-
-					Files.createDirectories(newFile.getParent());
-
-					if (fileString.endsWith(".class")) {
-						var classReader = new ClassReader(Files.readAllBytes(oldFile));
-						var classWriter = new ClassWriter(classReader, 0);
-						var classRemapper = new Mappings.SteelwoolClassRemapper(classWriter, remapper);
-
-						classReader.accept(classRemapper, 0);
-
-						byte[] data = classWriter.toByteArray();
-						Files.write(newFile, data);
-					} else if (fileString.endsWith("refmap.json")) {
+	// Package-private for benchmarks
+	static void transformJar(ZipReader input, Path outputPath, Mappings.SimpleMappingData mappings, Remapper remapper, LoaderModMetadata fabricData, ConversionExecutor executor) throws IOException {
+		try (var output = ZipWriter.create(outputPath)) {
+			var accessWidenerName = fabricData.getAccessWidener() != null ? stripLeadingSlash(fabricData.getAccessWidener()) : null;
+			// Merged access transformers are collected from each jar afterwards, so Forge shouldn't also load them from here
+			var accessTransformerName = Options.MERGE_ACCESS_TRANSFORMERS ? UNMERGED_ACCESS_TRANSFORMER_NAME : ACCESS_TRANSFORMER_NAME;
+			// Mixin reads mixin classes itself rather than loading them, so they are always remapped up front
+			var mixinPackages = Options.LAZY_REMAPPING ? getMixinPackages(input, fabricData) : List.<String>of();
+			var lazyClasses = new ArrayList<String>();
+
+			// The manifest goes first, so that it can still be found by JarInputStream
+			var oldManifest = input.getEntry(MANIFEST_NAME);
+			output.write(MANIFEST_NAME, updateManifest(oldManifest != null ? input.read(oldManifest) : null, fabricData));
+			output.write(MODS_TOML_NAME, new TomlWriter().writeToString(generateForgeMetadata(fabricData)).getBytes(StandardCharsets.UTF_8));
+
+			// Classes may be remapped in parallel, but everything is written in the original order
+			var writeQueue = new OrderedWriteQueue(executor, Options.MAX_PENDING_CLASSES);
+			try {
+				for (var entry : input.getEntries()) {
+					var name = entry.name();
+					if (shouldSkip(name) || name.equals(MANIFEST_NAME) || name.equals(MODS_TOML_NAME)) continue;
+					// Any existing access transformer would be replaced by the converted access widener
+					if (accessWidenerName != null && name.equals(ACCESS_TRANSFORMER_NAME)) continue;
+
+					if (name.endsWith(".class") && Options.LAZY_REMAPPING && isLazyClass(name, mixinPackages)) {
+						lazyClasses.add(name.substring(0, name.length() - ".class".length()));
+						writeQueue.add(() -> output.writeRaw(entry, input.getRawData(entry)));
+					} else if (name.endsWith(".class")) {
+						writeQueue.submit(() -> {
+							var data = remapClass(input.read(entry), remapper);
+							return () -> output.write(name, data, entry.dosTime());
+						});
+					} else if (name.endsWith("refmap.json")) {
 						// TODO find refmap files from fabric json -> mixin configs -> refmaps, rather than using file names
 						// TODO do we need to change the "named:intermediary" key in the "data" element? afaik only the "mappings" element is used anyway?
-						remapRefmap(mappings, oldFile, newFile);
-					} else if (accessWidenerPath != null && Files.isSameFile(accessWidenerPath, oldFile)) {
-						convertAccessWidener(mappings, oldFile, accessWidenerOutputPath);
+						writeQueue.add(() -> {
+							try (var ignored = StartupTimings.phase("refmap", fabricData.getId() + "/" + name)) {
+								output.write(name, remapRefmap(mappings, input.read(entry)), entry.dosTime());
+							}
+						});
+					} else if (name.equals(accessWidenerName)) {
+						writeQueue.add(() -> {
+							try (var ignored = StartupTimings.phase("accessWidener", fabricData.getId())) {
+								output.write(accessTransformerName, convertAccessWidener(mappings, input.read(entry)));
+							}
+						});
 					} else {
-						Files.copy(oldFile, newFile);
+						writeQueue.add(() -> output.writeRaw(entry, input.getRawData(entry)));
 					}
-
-					return FileVisitResult.CONTINUE;
 				}
-			});
-			Files.write(newFs.getPath("/META-INF/mods.toml"), new TomlWriter().writeToString(generateForgeMetadata(fabricData)).getBytes());
+				writeQueue.flush();
+			} catch (IOException | RuntimeException e) {
+				// Entries still being processed read from the input, which the caller closes as soon as this returns
+				writeQueue.discard();
+				throw e;
+			}
 
-			// maybe update the manifest while walking all files, instead of here? eh, probably better to do it here in case the file didn't exist in the old jar
-			var manifestPath = newFs.getPath("/META-INF/MANIFEST.MF");
-			updateManifest(manifestPath, fabricData);
+			if (!lazyClasses.isEmpty()) {
+				output.write(LazyRemapping.LAZY_CLASSES_NAME, String.join("\n", lazyClasses).getBytes(StandardCharsets.UTF_8));
+			}
 
 			// Fabric allows for `-` in mod ids, which isn't allowed in java packages
 			var escapedId = fabricData.getId().replace("-", "_");
 
 			var dummyModClassPackage = "io/github/steelwoolmc/steelwool/generated/" + escapedId;
-			var dummyModClassPath = newFs.getPath(dummyModClassPackage + "/Mod.class");
-			Files.createDirectories(dummyModClassPath.getParent());
-			Files.write(dummyModClassPath, generateDummyModClass(dummyModClassPackage + "/Mod", fabricData.getId()));
-
-			var mcmetaPath = newFs.getPath("pack.mcmeta");
-			if (!Files.exists(mcmetaPath)) {
-				Files.write(mcmetaPath, """
-						{
-							"pack": {
-								"description": "%s",
-								"pack_format": 8
-							}
-						}""".formatted(fabricData.getId()).getBytes());
+			output.write(dummyModClassPackage + "/Mod.class", generateDummyModClass(dummyModClassPackage + "/Mod", fabricData.getId()));
+
+			if (!output.contains("pack.mcmeta")) {
+				output.write("pack.mcmeta", generatePackMcmeta(fabricData.getId()));
+			}
+		}
+	}
+
+	/**
+	 * Get the packages containing a mod's mixin classes, from the mod's mixin configs
+	 * @param input the fabric mod jar
+	 * @param fabricData the fabric mod metadata of the mod
+	 * @return the mixin packages, as internal names with a trailing {@code /}
+	 */
+	private static List<String> getMixinPackages(ZipReader input, LoaderModMetadata fabricData) throws IOException {
+		var packages = new ArrayList<String>();
+		for (var configName : fabricData.getMixinConfigs(FMLEnvironment.dist.isClient() ? EnvType.CLIENT : EnvType.SERVER)) {
+			var entry = input.getEntry(stripLeadingSlash(configName));
+			if (entry == null) continue;
+			var config = JsonParser.parseString(new String(input.read(entry), StandardCharsets.UTF_8));
+			if (config.isJsonObject() && config.getAsJsonObject().get("package") instanceof JsonPrimitive mixinPackage) {
+				packages.add(mixinPackage.getAsString().replace('.', '/') + "/");
 			}
 		}
+		return packages;
+	}
+
+	/**
+	 * @param name the name of a class entry
+	 * @param mixinPackages the packages containing the mod's mixin classes
+	 * @return whether the class can be left unmapped until it is loaded
+	 */
+	private static boolean isLazyClass(String name, List<String> mixinPackages) {
+		// Multi-release and module-info classes are never loaded by name through the transformer
+		if (name.startsWith("META-INF/") || name.endsWith("module-info.class")) return false;
+		return mixinPackages.stream().noneMatch(name::startsWith);
+	}
+
+	private static byte[] generatePackMcmeta(String description) {
+		return """
+				{
+					"pack": {
+						"description": "%s",
+						"pack_format": 8
+					}
+				}""".formatted(description).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String stripLeadingSlash(String path) {
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+	/**
+	 * Remap a class from intermediary to TSRG
+	 * @param classBytes the original class bytecode
+	 * @param remapper the ASM remapper to be used for remapping
+	 * @return the remapped class bytecode
+	 */
+	private static byte[] remapClass(byte[] classBytes, Remapper remapper) {
+		var classReader = new ClassReader(classBytes);
+		var classWriter = new ClassWriter(classReader, 0);
+		var classRemapper = new Mappings.SteelwoolClassRemapper(classWriter, remapper);
+
+		classReader.accept(classRemapper, 0);
+
+		return classWriter.toByteArray();
 	}
 
 	/**
@@ -285,25 +691,24 @@ public class FabricToForgeConverter {
 	 * Modify the jar manifest data of a converted mod jar
 	 *
 	 * <p>Updates the mixin config path, and adds a marker to indicate that the jar was transformed by Steelwool</p>
-	 * @param manifestPath the path of the manifest to modify
+	 * @param manifestData the original manifest, or null if the jar didn't have one
 	 * @param fabricData the fabric mod metadata of the mod
+	 * @return the modified manifest
 	 */
-	private static void updateManifest(Path manifestPath, LoaderModMetadata fabricData) throws IOException {
+	private static byte[] updateManifest(byte[] manifestData, LoaderModMetadata fabricData) throws IOException {
 		Manifest manifest;
 
-		if (Files.exists(manifestPath)) {
-			try(var stream = Files.newInputStream(manifestPath)) {
-				manifest = new Manifest(stream);
-			}
+		if (manifestData != null) {
+			manifest = new Manifest(new ByteArrayInputStream(manifestData));
 		} else {
 			// TODO do we need to add some default manifest data here?
 			manifest = new Manifest();
 		}
 
 		var mainAttributes = manifest.getMainAttributes();
-		// TODO figure out how to cleanly include/get version data at runtime so we can put the version here
-		//      (manifest data? our manifest would be lost if someone puts Steelwool in a fat jar, but who's going to do that? it'd probably be fine)
-		mainAttributes.putValue("Transformed-With-Steelwool", "0.0.0");
+		// Manifests without a version are written without any attributes at all
+		mainAttributes.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+		mainAttributes.putValue("Transformed-With-Steelwool", Constants.VERSION);
 
 		var mixinConfigs = fabricData.getMixinConfigs(FMLEnvironment.dist.isClient() ? EnvType.CLIENT : EnvType.SERVER);
 		if (mixinConfigs.size() > 0) {
@@ -312,52 +717,95 @@ public class FabricToForgeConverter {
 			LOG.debug("mixins: " + mainAttributes.getValue("MixinConfigs"));
 		}
 
-		try(var stream = Files.newOutputStream(manifestPath)) {
-			manifest.write(stream);
-		}
+		var stream = new ByteArrayOutputStream();
+		manifest.write(stream);
+		return stream.toByteArray();
 	}
 
 	/**
 	 * Remap a Mixin refmap file from (named->intermediary) to (named->TSRG)
+	 *
+	 * <p>The refmap is rewritten token by token, without building a tree of the whole file; the output is the same as parsing it
+	 * into a {@link com.google.gson.JsonObject} and serializing it again with a default {@link com.google.gson.Gson}.</p>
 	 * @param mappings the intermediary->TSRG mapping data
-	 * @param oldFile the path of the original refmap file
-	 * @param newFile the path to create the remapped refmap file
+	 * @param refmapData the original refmap file
+	 * @return the remapped refmap file
 	 */
-	private static void remapRefmap(Mappings.SimpleMappingData mappings, Path oldFile, Path newFile) throws IOException {
-		JsonObject jsonRoot;
-		try (var reader = Files.newBufferedReader(oldFile)) {
-			jsonRoot = JsonParser.parseReader(reader).getAsJsonObject();
-		}
-
-		remapRefmapData(mappings, jsonRoot.getAsJsonObject("mappings"));
-		// TODO do we even need to remap the data? Does mixin just always use `mappings`?
-		var data = jsonRoot.getAsJsonObject("data");
-		// TODO do we want to change the key to say "searge" too?
-		data.entrySet().forEach(entry -> remapRefmapData(mappings, entry.getValue().getAsJsonObject()));
-
-		try (var writer = Files.newBufferedWriter(newFile)) {
-			new Gson().toJson(jsonRoot, writer);
-			// Not sure why we have to call this ourselves but whatever
-			writer.flush();
+	// Package-private for tests
+	static byte[] remapRefmap(Mappings.SimpleMappingData mappings, byte[] refmapData) throws IOException {
+		var output = new ByteArrayOutputStream(refmapData.length + refmapData.length / 8);
+		try (var reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(refmapData), StandardCharsets.UTF_8));
+			 var writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)))) {
+			// Same settings as JsonParser and Gson#toJson use
+			reader.setLenient(true);
+			writer.setLenient(true);
+			writer.setHtmlSafe(true);
+			writer.setSerializeNulls(false);
+
+			reader.beginObject();
+			writer.beginObject();
+			while (reader.hasNext()) {
+				var name = reader.nextName();
+				writer.name(name);
+				// Strings are remapped in `mappings.<class>.<key>`, and `data.<namespace>.<class>.<key>`
+				// TODO do we even need to remap the data? Does mixin just always use `mappings`?
+				// TODO do we want to change the key to say "searge" too?
+				var remapDepth = switch (name) {
+					case "mappings" -> 2;
+					case "data" -> 3;
+					default -> -1;
+				};
+				copyRefmapValue(mappings, reader, writer, remapDepth);
+			}
+			reader.endObject();
+			writer.endObject();
+			if (reader.peek() != JsonToken.END_DOCUMENT) throw new IOException("Refmap contains more than one JSON value");
 		}
+		return output.toByteArray();
 	}
 
 	/**
-	 * Remap the mapping data within a Mixin refmap, from (named->intermediary) to (named->TSRG)
+	 * Copy a single JSON value from a refmap, remapping strings at a given depth
 	 * @param mappings the intermediary->TSRG mapping data
-	 * @param data the refmap data to modify in-place
+	 * @param reader the reader, positioned before the value
+	 * @param writer the writer to copy the value to
+	 * @param remapDepth the number of objects to descend into before reaching strings that should be remapped,
+	 *                   or -1 if nothing within the value should be remapped
 	 */
-	private static void remapRefmapData(Mappings.SimpleMappingData mappings, JsonObject data) {
-		data.entrySet().forEach(classEntry -> {
-			if (classEntry.getValue().isJsonObject()) {
-				classEntry.getValue().getAsJsonObject().entrySet().forEach(entry -> {
-					var value = entry.getValue();
-					if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
-						entry.setValue(new JsonPrimitive(Mappings.naiveRemapString(mappings, value.getAsString())));
-					}
-				});
+	private static void copyRefmapValue(Mappings.SimpleMappingData mappings, JsonReader reader, JsonWriter writer, int remapDepth) throws IOException {
+		switch (reader.peek()) {
+			case BEGIN_OBJECT -> {
+				reader.beginObject();
+				writer.beginObject();
+				while (reader.hasNext()) {
+					writer.name(reader.nextName());
+					copyRefmapValue(mappings, reader, writer, remapDepth > 0 ? remapDepth - 1 : -1);
+				}
+				reader.endObject();
+				writer.endObject();
 			}
-		});
+			case BEGIN_ARRAY -> {
+				reader.beginArray();
+				writer.beginArray();
+				while (reader.hasNext()) {
+					copyRefmapValue(mappings, reader, writer, -1);
+				}
+				reader.endArray();
+				writer.endArray();
+			}
+			case STRING -> {
+				var value = reader.nextString();
+				writer.value(remapDepth == 0 ? Mappings.naiveRemapString(mappings, value) : value);
+			}
+			// Numbers are copied as written, like Gson does with the lazily parsed numbers from a parsed tree
+			case NUMBER -> writer.jsonValue(reader.nextString());
+			case BOOLEAN -> writer.value(reader.nextBoolean());
+			case NULL -> {
+				reader.nextNull();
+				writer.nullValue();
+			}
+			default -> throw new IOException("Unexpected token in refmap: " + reader.peek());
+		}
 	}
 
 	// TODO actually test this - really pretty much everything in this class needs actual tests written
@@ -366,11 +814,11 @@ public class FabricToForgeConverter {
 	/**
 	 * Convert an access widener file to an equivalent access transformer file
 	 * @param mappings the intermediary->TSRG mapping data
-	 * @param oldFile the access widener file to read
-	 * @param newFile the path to create the access transformer file
+	 * @param accessWidenerData the access widener file
+	 * @return the access transformer file
 	 */
-	private static void convertAccessWidener(Mappings.SimpleMappingData mappings, Path oldFile, Path newFile) throws IOException {
-		try (var reader = Files.newBufferedReader(oldFile)) {
+	private static byte[] convertAccessWidener(Mappings.SimpleMappingData mappings, byte[] accessWidenerData) throws IOException {
+		try (var reader = new BufferedReader(new StringReader(new String(accessWidenerData, StandardCharsets.UTF_8)))) {
 			var header = reader.readLine();
 			var headerParts = header.split("\\s+");
 			if (headerParts.length != 3 || !headerParts[0].equals("accessWidener")) {
@@ -404,7 +852,7 @@ public class FabricToForgeConverter {
 				return convertAccessWidenerLine(mappings, transformer) + comment;
 			}).collect(Collectors.joining("\n"));
 			accessTransformerData = "# Converted from an AccessWidener by Steelwool\n" + accessTransformerData;
-			Files.write(newFile, accessTransformerData.getBytes());
+			return accessTransformerData.getBytes(StandardCharsets.UTF_8);
 		}
 	}
 
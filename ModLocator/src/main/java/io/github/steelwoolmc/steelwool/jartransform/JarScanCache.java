@@ -0,0 +1,167 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.Utils;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Cache of the class hierarchy data scanned from each mod jar, keyed by the hash of the jar
+ *
+ * <p>This lets later launches build the {@link ClassHierarchy} without parsing every class in every mod again.</p>
+ */
+public class JarScanCache {
+	private static final int MAGIC = 0x53574853; // "SWHS"
+	/** Bump this whenever the file layout or the scanned data changes, so that old files are ignored */
+	private static final int FORMAT_VERSION = 2;
+
+	private final Path folder;
+	private final Set<Path> usedPaths = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param folder the folder to store scan results in
+	 */
+	public JarScanCache(Path folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * The class hierarchy data of a single jar
+	 * @param classes the classes declared by the jar
+	 * @param referencedClasses the names of all classes declared or referenced by the jar's classes
+	 */
+	public record ScanResult(List<ClassHierarchy.ClassEntry> classes, Set<String> referencedClasses) {}
+
+	private Path getPath(String jarHash) {
+		return folder.resolve(jarHash + ".bin");
+	}
+
+	/**
+	 * Get the scan result for a jar, if it has been cached
+	 * @param jarHash the hash of the jar
+	 * @return the scan result, or null if it isn't cached (or the cached data is unreadable)
+	 */
+	public ScanResult get(String jarHash) {
+		var path = getPath(jarHash);
+		usedPaths.add(path);
+		if (!Files.isRegularFile(path)) {
+			StartupTimings.cacheLookup("hierarchy", jarHash, false);
+			return null;
+		}
+
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(Utils.getBuildHash())) {
+				StartupTimings.cacheLookup("hierarchy", jarHash, false);
+				return null;
+			}
+
+			var classCount = input.readInt();
+			var classes = new ArrayList<ClassHierarchy.ClassEntry>(classCount);
+			for (var i = 0; i < classCount; i++) {
+				var name = input.readUTF();
+				var superName = input.readBoolean() ? input.readUTF() : null;
+				var interfaceCount = input.readInt();
+				var interfaces = new ArrayList<String>(interfaceCount);
+				for (var j = 0; j < interfaceCount; j++) {
+					interfaces.add(input.readUTF());
+				}
+				classes.add(new ClassHierarchy.ClassEntry(name, superName, interfaces));
+			}
+
+			var referencedCount = input.readInt();
+			var referencedClasses = new HashSet<String>(referencedCount * 2);
+			for (var i = 0; i < referencedCount; i++) {
+				referencedClasses.add(input.readUTF());
+			}
+			StartupTimings.cacheLookup("hierarchy", jarHash, true);
+			return new ScanResult(classes, referencedClasses);
+		} catch (IOException e) {
+			LOG.warn("Failed to read cached class hierarchy {}, rescanning the jar", path.getFileName());
+			StartupTimings.cacheLookup("hierarchy", jarHash, false);
+			return null;
+		}
+	}
+
+	/**
+	 * Keep the scan result for a jar without reading it, so that {@link #evictUnused()} doesn't delete it
+	 *
+	 * <p>Used when the data is only needed if some other cache misses, e.g. minecraft's classes when the hierarchy index is reused.</p>
+	 * @param jarHash the hash of the jar
+	 */
+	public void markUsed(String jarHash) {
+		usedPaths.add(getPath(jarHash));
+	}
+
+	/**
+	 * Store the scan result for a jar
+	 * @param jarHash the hash of the jar
+	 * @param result the scan result
+	 */
+	public void put(String jarHash, ScanResult result) {
+		var path = getPath(jarHash);
+		usedPaths.add(path);
+		// Write to a temporary file first, so that a crash never leaves a truncated file behind
+		var tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(FORMAT_VERSION);
+				output.writeUTF(Utils.getBuildHash());
+
+				output.writeInt(result.classes().size());
+				for (var entry : result.classes()) {
+					output.writeUTF(entry.name());
+					output.writeBoolean(entry.superName() != null);
+					if (entry.superName() != null) output.writeUTF(entry.superName());
+					output.writeInt(entry.interfaces().size());
+					for (var iface : entry.interfaces()) {
+						output.writeUTF(iface);
+					}
+				}
+
+				output.writeInt(result.referencedClasses().size());
+				for (var name : result.referencedClasses()) {
+					output.writeUTF(name);
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Not fatal, the jar will just be scanned again next launch
+			LOG.warn("Failed to cache class hierarchy {}", path.getFileName(), e);
+			try {
+				Files.deleteIfExists(tempPath);
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Delete all files in the cache that were not used by this launch, as their jars have changed or been removed
+	 */
+	public void evictUnused() {
+		try (var files = Files.list(folder)) {
+			files.filter(path -> !usedPaths.contains(path)).forEach(path -> {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					LOG.warn("Failed to delete stale class hierarchy {}", path.getFileName());
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Failed to clean up class hierarchy cache", e);
+		}
+	}
+}
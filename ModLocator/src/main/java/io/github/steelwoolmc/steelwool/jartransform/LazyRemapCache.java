@@ -0,0 +1,175 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Persistent cache of the lazily remapped classes of a single converted jar, so that later launches don't have to remap them again
+ *
+ * <p>The cache is keyed by the conversion cache key of the jar, which covers the jar's contents, the mapping data and the parts of
+ * the class hierarchy the jar depends on; so a cached class is only reused when it would be remapped the same way.</p>
+ *
+ * <p>Classes are appended to the file as they are remapped, and read back individually when they are loaded again.
+ * A record left incomplete by a crash is cut off the next time the file is opened.</p>
+ *
+ * <p>File layout: magic, format version, the key, then a record per class of {@code [name length][name][data length][data]},
+ * with the name in UTF-8.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+class LazyRemapCache {
+	private static final int MAGIC = 0x53574c52; // "SWLR"
+	/** Bump this whenever the file layout changes, so that old files are discarded */
+	private static final int FORMAT_VERSION = 1;
+
+	private final Path file;
+	private final FileChannel channel;
+	/** The offset and length of the data of each cached class */
+	private final Map<String, long[]> entries = new ConcurrentHashMap<>();
+	/** The end of the last complete record; guarded by this */
+	private long end;
+
+	private LazyRemapCache(Path file, FileChannel channel) {
+		this.file = file;
+		this.channel = channel;
+	}
+
+	/**
+	 * Open the cache file of a jar, creating it (or replacing an unreadable or outdated file) if necessary
+	 * @param file the path of the cache file
+	 * @param key the conversion cache key of the jar
+	 * @return the cache
+	 */
+	static LazyRemapCache open(Path file, String key) throws IOException {
+		var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			var cache = new LazyRemapCache(file, channel);
+			if (!cache.readIndex(key)) {
+				channel.truncate(0);
+				var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+				var header = ByteBuffer.allocate(Integer.BYTES * 3 + keyBytes.length)
+						.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(keyBytes.length).put(keyBytes).flip();
+				cache.end = writeFully(channel, header, 0);
+			}
+			return cache;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the records of an existing file
+	 * @param key the key the file must have been written with
+	 * @return whether the file was valid; if not, it has to be rewritten from scratch
+	 */
+	private boolean readIndex(String key) throws IOException {
+		var size = channel.size();
+		var header = readAt(0, Integer.BYTES * 3, size);
+		if (header == null || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) return false;
+		var keyBytes = readAt(Integer.BYTES * 3, header.getInt(), size);
+		if (keyBytes == null || !StandardCharsets.UTF_8.decode(keyBytes).toString().equals(key)) return false;
+
+		var position = Integer.BYTES * 3L + keyBytes.capacity();
+		while (position < size) {
+			var nameLength = readAt(position, Integer.BYTES, size);
+			var name = nameLength != null ? readAt(position + Integer.BYTES, nameLength.getInt(), size) : null;
+			var dataPosition = name != null ? position + Integer.BYTES + name.capacity() : -1;
+			var dataLength = name != null ? readAt(dataPosition, Integer.BYTES, size) : null;
+			var length = dataLength != null ? dataLength.getInt() : -1;
+			if (length < 0 || dataPosition + Integer.BYTES + length > size) {
+				LOG.debug("Discarding incomplete record at the end of {}", file.getFileName());
+				channel.truncate(position);
+				break;
+			}
+			entries.put(StandardCharsets.UTF_8.decode(name).toString(), new long[] {dataPosition + Integer.BYTES, length});
+			position = dataPosition + Integer.BYTES + length;
+		}
+		end = Math.min(position, size);
+		return true;
+	}
+
+	/**
+	 * @return the bytes at a position of the file, or null if they extend past the end of the file (or the length is negative)
+	 */
+	private ByteBuffer readAt(long position, int length, long size) throws IOException {
+		if (length < 0 || position + length > size) return null;
+		var buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) return null;
+		}
+		return buffer.flip();
+	}
+
+	private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+
+	/**
+	 * @param name the internal name of a class
+	 * @return the remapped class, or null if it isn't cached (or couldn't be read)
+	 */
+	byte[] get(String name) {
+		var entry = entries.get(name);
+		if (entry == null) return null;
+		try {
+			var data = readAt(entry[0], (int) entry[1], Long.MAX_VALUE);
+			return data != null ? data.array() : null;
+		} catch (IOException e) {
+			LOG.warn("Failed to read cached remapped class {}", name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Add a remapped class to the cache; failures are only logged, as the class will just be remapped again next launch
+	 * @param name the internal name of the class
+	 * @param data the remapped class
+	 */
+	synchronized void put(String name, byte[] data) {
+		if (entries.containsKey(name)) return;
+		var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		var record = ByteBuffer.allocate(Integer.BYTES * 2 + nameBytes.length + data.length)
+				.putInt(nameBytes.length).put(nameBytes).putInt(data.length).put(data).flip();
+		try {
+			var recordStart = end;
+			end = writeFully(channel, record, recordStart);
+			entries.put(name, new long[] {end - data.length, data.length});
+		} catch (IOException e) {
+			LOG.warn("Failed to cache remapped class {}", name, e);
+		}
+	}
+
+	/**
+	 * Delete all cache files in a folder that don't belong to any of the given caches, as their jars have changed or been removed
+	 * @param folder the folder containing the cache files
+	 * @param used the caches that are in use
+	 */
+	static void evictUnused(Path folder, Collection<LazyRemapCache> used) {
+		var usedFiles = used.stream().map(cache -> cache.file).toList();
+		try (var files = Files.list(folder)) {
+			files.filter(path -> !usedFiles.contains(path)).forEach(path -> {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					LOG.warn("Failed to delete stale remapped classes {}", path.getFileName());
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Failed to clean up the remapped class cache", e);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.Constants;
+import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
+import io.github.steelwoolmc.steelwool.jartransform.zip.JarHandles;
+import net.minecraftforge.fml.loading.FMLPaths;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * The mod classes that were left unmapped during conversion, so that they can be remapped when they are loaded instead
+ *
+ * <p>Each lazily converted jar lists its unmapped classes in {@link #LAZY_CLASSES_NAME}, so that jars from the conversion cache
+ * can be handled in the same way as newly converted ones.</p>
+ *
+ * <p>Remapped classes are stored in a {@link LazyRemapCache} per jar, so each class is only remapped the first time it is loaded
+ * with a given mod set; later launches read the remapped class back instead.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class LazyRemapping {
+	/** The jar entry listing the internal names of the classes that still have to be remapped, one per line */
+	static final String LAZY_CLASSES_NAME = "META-INF/steelwool/lazy-classes.txt";
+
+	private final Remapper remapper;
+	/** The cache of the jar containing each class that still has to be remapped, by internal name */
+	private final Map<String, LazyRemapCache> classes;
+
+	private LazyRemapping(Remapper remapper, Map<String, LazyRemapCache> classes) {
+		this.remapper = remapper;
+		this.classes = classes;
+	}
+
+	/**
+	 * Collect the unmapped classes of converted jars, opening the remapped class cache of each jar that has any
+	 * @param remapper the remapper to remap classes with once they are loaded
+	 * @param convertedJars the converted mod jars
+	 * @param conversionKeys the conversion cache key of each converted jar, in the same order
+	 * @param jarHandles the jar handles to read the converted jars through
+	 * @return the lazy remapping of the jars
+	 */
+	static LazyRemapping create(Remapper remapper, List<Path> convertedJars, List<String> conversionKeys, JarHandles jarHandles) throws IOException {
+		var cacheFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("lazy"));
+		var classes = new HashMap<String, LazyRemapCache>();
+		var caches = new ArrayList<LazyRemapCache>();
+		for (var i = 0; i < convertedJars.size(); i++) {
+			String lazyClasses;
+			try (var handle = jarHandles.acquire(convertedJars.get(i))) {
+				var jar = handle.reader();
+				var entry = jar.getEntry(LAZY_CLASSES_NAME);
+				if (entry == null) continue;
+				lazyClasses = new String(jar.read(entry), StandardCharsets.UTF_8);
+			}
+
+			var key = conversionKeys.get(i);
+			var cache = LazyRemapCache.open(cacheFolder.resolve(key.substring(0, 16) + ".bin"), key);
+			caches.add(cache);
+			// As with class loading, the first jar containing a class wins
+			lazyClasses.lines().forEach(name -> classes.putIfAbsent(name, cache));
+		}
+		LazyRemapCache.evictUnused(cacheFolder, caches);
+		LOG.info("{} mod classes will be remapped when they are loaded", classes.size());
+		return new LazyRemapping(remapper, Map.copyOf(classes));
+	}
+
+	/**
+	 * @return the internal names of all classes that still have to be remapped
+	 */
+	public Set<String> getClasses() {
+		return classes.keySet();
+	}
+
+	/**
+	 * Remap a class from intermediary to TSRG, or get it from the cache if it was remapped before
+	 * @param input the class, as read from the converted jar
+	 * @return the remapped class
+	 */
+	public ClassNode remap(ClassNode input) {
+		var cache = classes.get(input.name);
+		var output = new ClassNode(Opcodes.ASM9);
+		var cached = cache != null ? cache.get(input.name) : null;
+		if (cached != null) {
+			// Frames are expanded, as ModLauncher does when it reads classes for transformers
+			new ClassReader(cached).accept(output, ClassReader.EXPAND_FRAMES);
+			return output;
+		}
+
+		input.accept(new Mappings.SteelwoolClassRemapper(output, remapper));
+		if (cache != null) {
+			var writer = new ClassWriter(0);
+			output.accept(writer);
+			cache.put(input.name, writer.toByteArray());
+		}
+		return output;
+	}
+}
@@ -0,0 +1,103 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Processes the entries of a single jar on a {@link ConversionExecutor}, while writing the results from a single thread
+ *
+ * <p>Writes are always performed in the same order the entries were added, regardless of which entries finish processing first,
+ * so the output jar is identical whether or not entries are processed in parallel.
+ * At most {@code maxPending} entries are held in memory at a time; adding more blocks until the oldest one is written.</p>
+ */
+class OrderedWriteQueue {
+	private final ConversionExecutor executor;
+	private final int maxPending;
+	private final ArrayDeque<Future<WriteAction>> pending = new ArrayDeque<>();
+
+	/**
+	 * @param executor the executor to process entries on
+	 * @param maxPending the maximum number of entries to process ahead of the writer
+	 */
+	OrderedWriteQueue(ConversionExecutor executor, int maxPending) {
+		this.executor = executor;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Process an entry on the executor, then write it once all previously added entries have been written
+	 * @param task processes the entry (e.g. remaps a class), returning the action that writes it
+	 */
+	void submit(Callable<WriteAction> task) throws IOException {
+		if (pending.size() >= maxPending) {
+			writeNext();
+		}
+		pending.add(executor.submit(task));
+	}
+
+	/**
+	 * Write an entry that needs no processing, once all previously added entries have been written
+	 * @param action the action that writes the entry
+	 */
+	void add(WriteAction action) throws IOException {
+		if (pending.isEmpty()) {
+			action.write();
+		} else {
+			if (pending.size() >= maxPending) {
+				writeNext();
+			}
+			pending.add(CompletableFuture.completedFuture(action));
+		}
+	}
+
+	/**
+	 * Wait for all added entries to be processed, and write them
+	 */
+	void flush() throws IOException {
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Wait for all added entries to finish processing without writing them, after writing has failed
+	 *
+	 * <p>Entries are processed from the input jar, so this must be called before the input is closed.</p>
+	 */
+	void discard() {
+		while (!pending.isEmpty()) {
+			try {
+				pending.remove().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException ignored) {}
+		}
+	}
+
+	private void writeNext() throws IOException {
+		WriteAction action;
+		try {
+			action = pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing jar entries", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioException) throw ioException;
+			throw new IOException("Failed to process jar entry", e.getCause());
+		}
+		action.write();
+	}
+
+	/**
+	 * Writes a processed entry to the output jar
+	 */
+	@FunctionalInterface
+	interface WriteAction {
+		void write() throws IOException;
+	}
+}
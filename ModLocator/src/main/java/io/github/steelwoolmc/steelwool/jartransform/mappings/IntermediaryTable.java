@@ -0,0 +1,130 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Lookup table for intermediary names, indexed by their numeric id (e.g. {@code 1234} for {@code method_1234})
+ *
+ * <p>Almost all intermediary names end in an id, so instead of hashing the name, lookups parse the id out of the name and index the dense id index
+ * stored in the mapping file (see {@link MappingTable#indexOfId(int)}). Names without an id (such as anonymous classes like
+ * {@code class_1234$1}) fall back to the table's hash index. Lookups don't allocate, other than decoding each value the first time it is requested.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class IntermediaryTable {
+	private final MappingTable table;
+	private final IdFormat format;
+
+	/**
+	 * @param table the backing mapping table, written with {@code format} as the id parser
+	 * @param format the format of the intermediary names in the table
+	 */
+	IntermediaryTable(MappingTable table, IdFormat format) {
+		this.table = table;
+		this.format = format;
+	}
+
+	/**
+	 * @param name the intermediary name to look up
+	 * @return the mapped name, or null if there is none
+	 */
+	public String get(String name) {
+		return get(name, 0, name.length());
+	}
+
+	/**
+	 * Look up an intermediary name within a larger string, without extracting it
+	 * @param string the string containing the name
+	 * @param start the start of the name within the string, inclusive
+	 * @param end the end of the name within the string, exclusive
+	 * @return the mapped name, or null if there is none
+	 */
+	public String get(String string, int start, int end) {
+		var id = format.parseId(string, start, end);
+		if (id < 0) {
+			var index = table.indexOf(string, start, end);
+			return index >= 0 ? table.getValue(index) : null;
+		}
+		var index = table.indexOfId(id);
+		// The id alone isn't enough; the package (or e.g. leading zeros) could still differ
+		if (index < 0 || !table.keyEquals(index, string, start, end)) return null;
+		return table.getValue(index);
+	}
+
+	/**
+	 * @param name the intermediary name to look up
+	 * @return whether there is a mapping for the given name
+	 */
+	public boolean containsKey(String name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * @param index the index of a mapping, between 0 and {@link #size()}
+	 * @return the intermediary name of the mapping
+	 */
+	public String getKey(int index) {
+		return table.getKey(index);
+	}
+
+	/**
+	 * @param index the index of a mapping, between 0 and {@link #size()}
+	 * @return the mapped name of the mapping
+	 */
+	public String getValue(int index) {
+		return table.getValue(index);
+	}
+
+	/**
+	 * @return the number of mappings in the table
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * The format of the intermediary names in a table
+	 * @param prefix the prefix of the names, e.g. {@code method_}
+	 * @param allowPackage whether names may have a package and outer classes before the prefix (as for class names),
+	 *                     rather than being exactly the prefix followed by the id
+	 */
+	public record IdFormat(String prefix, boolean allowPackage) implements ToIntFunction<String> {
+		/**
+		 * Parse the id out of an intermediary name
+		 * @param name the name to parse
+		 * @return the id, or -1 if the name isn't an intermediary name with the expected prefix
+		 */
+		@Override
+		public int applyAsInt(String name) {
+			return parseId(name, 0, name.length());
+		}
+
+		/**
+		 * Parse the id out of an intermediary name within a larger string
+		 * @param string the string containing the name to parse
+		 * @param nameStart the start of the name within the string, inclusive
+		 * @param end the end of the name within the string, exclusive
+		 * @return the id, or -1 if the name isn't an intermediary name with the expected prefix
+		 */
+		public int parseId(String string, int nameStart, int end) {
+			var start = end;
+			while (start > nameStart && isDigit(string.charAt(start - 1))) start--;
+			// Ids above 9 digits aren't used, and would overflow
+			if (start == end || end - start > 9) return -1;
+
+			var prefixStart = start - prefix.length();
+			if (prefixStart < nameStart || !string.regionMatches(prefixStart, prefix, 0, prefix.length())) return -1;
+			if (prefixStart > nameStart && !(allowPackage && (string.charAt(prefixStart - 1) == '/' || string.charAt(prefixStart - 1) == '$'))) return -1;
+
+			var id = 0;
+			for (var i = start; i < end; i++) {
+				id = id * 10 + (string.charAt(i) - '0');
+			}
+			return id;
+		}
+
+		private static boolean isDigit(char c) {
+			return c >= '0' && c <= '9';
+		}
+	}
+}
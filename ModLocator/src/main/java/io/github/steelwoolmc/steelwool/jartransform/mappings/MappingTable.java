@@ -0,0 +1,345 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * A read-only string to string lookup table, backed by a memory-mapped binary mapping file
+ *
+ * <p>Mapping files are written once after the mapping data is generated, and afterwards loading them is just a memory mapping;
+ * nothing is parsed up front, and strings are only decoded when they are looked up.</p>
+ *
+ * <p>File layout (big-endian):</p>
+ * <pre>
+ * header:  magic, format version, minecraft version (UTF), content hash (UTF), table count
+ * table:   entry count, slot count, id count, key offsets[entries], value offsets[entries], key hashes[entries], slots[slots], ids[ids]
+ * pool:    size, then each distinct string as (u16 length, UTF-8 bytes)
+ * </pre>
+ * <p>Entries are sorted by key. Slots form an open-addressing hash index of entry index + 1 (0 being empty),
+ * using {@link String#hashCode()}, which is specified and so stable across runs.</p>
+ *
+ * <p>Tables whose keys contain a numeric id (such as intermediary names) also have a dense index from each id to entry index + 1,
+ * so that they can be looked up by id without anything having to be decoded when the file is loaded. Keys without an id
+ * (such as anonymous classes like {@code class_1234$1}) are left out of the id index, and can only be found through the hash index.</p>
+ *
+ * <p>Instances are safe to use from multiple threads.</p>
+ */
+public class MappingTable {
+	private static final int MAGIC = 0x53574d54; // "SWMT"
+	/** Bump this whenever the file layout changes, so that old files are regenerated */
+	private static final int FORMAT_VERSION = 2;
+
+	private final ByteBuffer pool;
+	private final IntBuffer keyOffsets;
+	private final IntBuffer valueOffsets;
+	private final IntBuffer keyHashes;
+	private final IntBuffer slots;
+	private final IntBuffer ids;
+	private final String[] values;
+
+	private MappingTable(ByteBuffer pool, IntBuffer keyOffsets, IntBuffer valueOffsets, IntBuffer keyHashes, IntBuffer slots, IntBuffer ids) {
+		this.pool = pool;
+		this.keyOffsets = keyOffsets;
+		this.valueOffsets = valueOffsets;
+		this.keyHashes = keyHashes;
+		this.slots = slots;
+		this.ids = ids;
+		this.values = new String[keyOffsets.capacity()];
+	}
+
+	/**
+	 * @return the number of entries in the table
+	 */
+	public int size() {
+		return keyOffsets.capacity();
+	}
+
+	/**
+	 * @param index the index of an entry, between 0 and {@link #size()}
+	 * @return the key of the entry; entries are sorted by key
+	 */
+	public String getKey(int index) {
+		return readString(keyOffsets.get(index));
+	}
+
+	/**
+	 * @param index the index of an entry, between 0 and {@link #size()}
+	 * @return the value of the entry
+	 */
+	public String getValue(int index) {
+		// Racing threads may both decode the same value, which is harmless
+		var value = values[index];
+		if (value == null) {
+			value = readString(valueOffsets.get(index));
+			values[index] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the index of the entry with the given key, or -1 if there is none
+	 */
+	public int indexOf(String key) {
+		return indexOf(key, 0, key.length());
+	}
+
+	/**
+	 * Look up a key within a larger string, without extracting it
+	 * @param string the string containing the key
+	 * @param start the start of the key within the string, inclusive
+	 * @param end the end of the key within the string, exclusive
+	 * @return the index of the entry with the given key, or -1 if there is none
+	 */
+	public int indexOf(String string, int start, int end) {
+		// Same as String#hashCode of the substring
+		var hash = 0;
+		for (var i = start; i < end; i++) {
+			hash = 31 * hash + string.charAt(i);
+		}
+		var mask = slots.capacity() - 1;
+		for (var slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+			var index = slots.get(slot) - 1;
+			if (index < 0) return -1;
+			if (keyHashes.get(index) == hash && keyEqualsAt(keyOffsets.get(index), string, start, end)) return index;
+		}
+	}
+
+	/**
+	 * Look up an entry by the id in its key, for tables that were written with an id parser
+	 * @param id the id to look up
+	 * @return the index of the entry whose key has the given id, or -1 if there is none
+	 */
+	public int indexOfId(int id) {
+		if (id < 0 || id >= ids.capacity()) return -1;
+		var index = ids.get(id) - 1;
+		// Guards against corrupt files, as the index is only checked against the key once it is used
+		return index < size() ? index : -1;
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the value for the given key, or null if there is none
+	 */
+	public String get(String key) {
+		var index = indexOf(key);
+		return index >= 0 ? getValue(index) : null;
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return whether the table contains the given key
+	 */
+	public boolean containsKey(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private String readString(int offset) {
+		var length = Short.toUnsignedInt(pool.getShort(offset));
+		var bytes = new byte[length];
+		pool.get(offset + 2, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Check the key of an entry without decoding it
+	 * @param index the index of an entry, between 0 and {@link #size()}
+	 * @param key the key to compare against
+	 * @return whether the entry has the given key
+	 */
+	boolean keyEquals(int index, String key) {
+		return keyEqualsAt(keyOffsets.get(index), key, 0, key.length());
+	}
+
+	/**
+	 * Check the key of an entry against part of a string, without decoding it
+	 * @param index the index of an entry, between 0 and {@link #size()}
+	 * @param key the string containing the key to compare against
+	 * @param start the start of the key within the string, inclusive
+	 * @param end the end of the key within the string, exclusive
+	 * @return whether the entry has the given key
+	 */
+	boolean keyEquals(int index, String key, int start, int end) {
+		return keyEqualsAt(keyOffsets.get(index), key, start, end);
+	}
+
+	private boolean keyEqualsAt(int offset, String key, int start, int end) {
+		// Mapped names are almost always ASCII, which can be compared without decoding
+		var length = Short.toUnsignedInt(pool.getShort(offset));
+		if (length == end - start) {
+			var i = 0;
+			for (; i < length; i++) {
+				var b = pool.get(offset + 2 + i);
+				if (b < 0) break;
+				if (b != key.charAt(start + i)) return false;
+			}
+			if (i == length) return true;
+		}
+		var decoded = readString(offset);
+		return decoded.length() == end - start && key.regionMatches(start, decoded, 0, decoded.length());
+	}
+
+	/**
+	 * Write a set of tables to a mapping file, replacing any existing file
+	 * @param file the path of the file to write
+	 * @param minecraftVersion the minecraft version the mappings are for
+	 * @param contentHash a hash of the data the mappings were generated from
+	 * @param tables the tables to write
+	 * @param idParsers for each table, parses the id out of a key (returning -1 if it has none, in which case the key is left out of
+	 *                  the id index), or null if the table has no id index
+	 */
+	public static void write(Path file, String minecraftVersion, String contentHash, List<? extends Map<String, String>> tables,
+							 List<? extends ToIntFunction<String>> idParsers) throws IOException {
+		if (idParsers.size() != tables.size()) throw new IllegalArgumentException("Expected an id parser (or null) for every table");
+		var pool = new ByteArrayOutputStream();
+		var poolData = new DataOutputStream(pool);
+		var poolOffsets = new LinkedHashMap<String, Integer>();
+
+		var bytes = new ByteArrayOutputStream();
+		var output = new DataOutputStream(bytes);
+		output.writeInt(MAGIC);
+		output.writeInt(FORMAT_VERSION);
+		output.writeUTF(minecraftVersion);
+		output.writeUTF(contentHash);
+		output.writeInt(tables.size());
+
+		for (var t = 0; t < tables.size(); t++) {
+			var entries = new ArrayList<>(new TreeMap<>(tables.get(t)).entrySet());
+			var slotCount = Integer.highestOneBit(Math.max(1, entries.size()) * 2 - 1) * 2;
+			var slots = new int[slotCount];
+			for (var i = 0; i < entries.size(); i++) {
+				var slot = spread(entries.get(i).getKey().hashCode()) & (slotCount - 1);
+				while (slots[slot] != 0) slot = (slot + 1) & (slotCount - 1);
+				slots[slot] = i + 1;
+			}
+
+			var ids = idParsers.get(t) != null ? buildIdIndex(entries, idParsers.get(t)) : new int[0];
+
+			output.writeInt(entries.size());
+			output.writeInt(slotCount);
+			output.writeInt(ids.length);
+			for (var entry : entries) output.writeInt(addToPool(entry.getKey(), poolData, poolOffsets));
+			for (var entry : entries) output.writeInt(addToPool(entry.getValue(), poolData, poolOffsets));
+			for (var entry : entries) output.writeInt(entry.getKey().hashCode());
+			for (var slot : slots) output.writeInt(slot);
+			for (var id : ids) output.writeInt(id);
+		}
+
+		output.writeInt(pool.size());
+		pool.writeTo(output);
+		output.flush();
+
+		// Write to a temporary file first, so that a crash never leaves a truncated file behind that looks valid
+		var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.createDirectories(file.getParent());
+		Files.write(tempFile, bytes.toByteArray());
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int[] buildIdIndex(List<Map.Entry<String, String>> entries, ToIntFunction<String> idParser) throws IOException {
+		var entryIds = new int[entries.size()];
+		var maxId = -1;
+		for (var i = 0; i < entries.size(); i++) {
+			// Keys without an id are still in the hash index, just not in this one
+			var id = idParser.applyAsInt(entries.get(i).getKey());
+			entryIds[i] = id;
+			maxId = Math.max(maxId, id);
+		}
+		// Ids are expected to be dense, so this only guards against bad data
+		if (maxId > Math.max(1 << 20, entries.size() * 16)) throw new IOException("Mapping ids are too sparse: " + maxId);
+		var ids = new int[maxId + 1];
+		for (var i = 0; i < entryIds.length; i++) {
+			if (entryIds[i] >= 0) ids[entryIds[i]] = i + 1;
+		}
+		return ids;
+	}
+
+	private static int addToPool(String string, DataOutputStream pool, Map<String, Integer> offsets) throws IOException {
+		var offset = offsets.get(string);
+		if (offset == null) {
+			var bytes = string.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > 0xFFFF) throw new IOException("Mapping name is too long: " + string);
+			offset = pool.size();
+			pool.writeShort(bytes.length);
+			pool.write(bytes);
+			offsets.put(string, offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Load the tables from a mapping file
+	 * @param file the path of the file to load
+	 * @param minecraftVersion the minecraft version the mappings must be for
+	 * @param contentHash the hash of the data the mappings must have been generated from
+	 * @return the tables, in the order they were written, or null if the file is from an older format, another minecraft version,
+	 *         or different source data
+	 */
+	public static List<MappingTable> read(Path file, String minecraftVersion, String contentHash) throws IOException {
+		ByteBuffer buffer;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null;
+			if (!readUTF(buffer).equals(minecraftVersion) || !readUTF(buffer).equals(contentHash)) return null;
+
+			var tableCount = buffer.getInt();
+			var tableBuffers = new ArrayList<IntBuffer[]>(tableCount);
+			for (var i = 0; i < tableCount; i++) {
+				var entryCount = buffer.getInt();
+				var slotCount = buffer.getInt();
+				var idCount = buffer.getInt();
+				if (entryCount < 0 || Integer.bitCount(slotCount) != 1 || slotCount <= entryCount || idCount < 0) throw new IOException("Corrupt mapping file: " + file);
+				tableBuffers.add(new IntBuffer[] {
+						sliceInts(buffer, entryCount), sliceInts(buffer, entryCount), sliceInts(buffer, entryCount), sliceInts(buffer, slotCount), sliceInts(buffer, idCount)
+				});
+			}
+			var poolSize = buffer.getInt();
+			var pool = buffer.slice(buffer.position(), poolSize);
+
+			var tables = new ArrayList<MappingTable>(tableCount);
+			for (var table : tableBuffers) {
+				tables.add(new MappingTable(pool, table[0], table[1], table[2], table[3], table[4]));
+			}
+			return tables;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupt mapping file: " + file, e);
+		}
+	}
+
+	private static IntBuffer sliceInts(ByteBuffer buffer, int count) {
+		var slice = buffer.slice(buffer.position(), count * 4).asIntBuffer();
+		buffer.position(buffer.position() + count * 4);
+		return slice;
+	}
+
+	/** Read a string written by {@link DataOutputStream#writeUTF(String)}; only used for the header, which is always ASCII */
+	private static String readUTF(ByteBuffer buffer) {
+		var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -1,9 +1,9 @@
 package io.github.steelwoolmc.steelwool.jartransform.mappings;
 
-import com.google.gson.JsonElement;
 import io.github.steelwoolmc.steelwool.Constants;
 import io.github.steelwoolmc.steelwool.Utils;
-import io.github.steelwoolmc.steelwool.jartransform.FabricToForgeConverter;
+import io.github.steelwoolmc.steelwool.jartransform.ClassHierarchy;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
 import net.minecraftforge.fml.loading.FMLPaths;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
@@ -13,13 +13,12 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.commons.MethodRemapper;
 import org.objectweb.asm.commons.Remapper;
-import oshi.util.tuples.Pair;
 
 import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -27,7 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -38,7 +37,17 @@ import java.util.stream.Collectors;
  */
 public class Mappings {
 	// TODO get game version instead of doing this
-	private static final String TARGET_VERSION = "1.20.1";
+	// Package-private for benchmarks
+	static final String TARGET_VERSION = "1.20.1";
+	/** The id formats of the class, method and field tables; the special case table has no ids */
+	// Package-private for benchmarks
+	static final List<IntermediaryTable.IdFormat> ID_FORMATS = Arrays.asList(
+			new IntermediaryTable.IdFormat("class_", true),
+			new IntermediaryTable.IdFormat("method_", false),
+			new IntermediaryTable.IdFormat("field_", false),
+			null);
+	/** Written alongside the embedded mappings by {@code GenerateMappingsPlugin} */
+	private static final String EMBEDDED_MAPPINGS_HASH_NAME = "intermediary_to_tsrg.sha256";
 
 	/**
 	 * Record containing class, method, and field mappings from intermediary to TSRG
@@ -47,18 +56,21 @@ public class Mappings {
 	 * @param classes map from intermediary class names to TSRG class names
 	 * @param methods map from intermediary method names to TSRG method names
 	 * @param fields map from intermediary field names to TSRG field names
+	 * @param hash a hash of the data the mappings were generated from, used to invalidate cached data when the mappings change
 	 */
-	public record SimpleMappingData(HashMap<String, String> classes,
-									HashMap<String, String> methods,
-									HashMap<String, String> fields,
-									HashMap<String, String> temporaryMethodSpecialCase) {}
+	public record SimpleMappingData(IntermediaryTable classes,
+									IntermediaryTable methods,
+									IntermediaryTable fields,
+									MappingTable temporaryMethodSpecialCase,
+									String hash) {}
 
 	/**
-	 * Load {@link SimpleMappingData} from a tiny-format intermediary->TSRG mapping file
+	 * Parse tiny-format intermediary->TSRG mapping files, in the order of the tables in {@link SimpleMappingData}
 	 * @param file the path of the mapping file to load
-	 * @return the loaded mapping data
+	 * @param file2 the path of the temporary special case mapping file to load
+	 * @return the class, method, field, and special case method mappings
 	 */
-	private static SimpleMappingData simpleMappings(Path file, Path file2) throws IOException {
+	private static List<Map<String, String>> parseTinyMappings(Path file, Path file2) throws IOException {
 		var classes = new HashMap<String, String>();
 		var methods = new HashMap<String, String>();
 		var fields = new HashMap<String, String>();
@@ -97,7 +109,41 @@ public class Mappings {
 					});
 		}
 
-		return new SimpleMappingData(classes, methods, fields, temporaryMethodSpecialCase);
+		return List.of(classes, methods, fields, temporaryMethodSpecialCase);
+	}
+
+	/**
+	 * Load {@link SimpleMappingData} from a binary mapping file
+	 * @param file the path of the mapping file to load
+	 * @param contentHash the hash of the embedded mapping data
+	 * @return the loaded mapping data, or null if the file is outdated
+	 */
+	// Package-private for benchmarks
+	static SimpleMappingData loadMappingTable(Path file, String contentHash) throws IOException {
+		var tables = MappingTable.read(file, TARGET_VERSION, contentHash);
+		if (tables == null) return null;
+		if (tables.size() != 4) throw new IOException("Unexpected number of mapping tables in " + file);
+		var hash = Utils.sha256(TARGET_VERSION, contentHash);
+		return new SimpleMappingData(
+				new IntermediaryTable(tables.get(0), ID_FORMATS.get(0)),
+				new IntermediaryTable(tables.get(1), ID_FORMATS.get(1)),
+				new IntermediaryTable(tables.get(2), ID_FORMATS.get(2)),
+				tables.get(3),
+				hash);
+	}
+
+	/**
+	 * Get the hash of the intermediary->TSRG data embedded in the mod jar, so that generated mapping files can be invalidated when it changes
+	 *
+	 * <p>The hash is computed when the mappings are generated at build time, so that the mappings don't have to be read at all
+	 * when the generated mapping files are up to date.</p>
+	 * @return the hash
+	 */
+	public static String getEmbeddedMappingsHash() throws IOException {
+		try (var stream = Mappings.class.getResourceAsStream(EMBEDDED_MAPPINGS_HASH_NAME)) {
+			if (stream == null) throw new IOException("Missing embedded mappings hash " + EMBEDDED_MAPPINGS_HASH_NAME);
+			return new String(stream.readAllBytes(), StandardCharsets.US_ASCII).strip();
+		}
 	}
 
 	/**
@@ -105,57 +151,51 @@ public class Mappings {
 	 * @return the mapping data for the current minecraft version
 	 */
 	public static SimpleMappingData getSimpleMappingData() {
-		// TODO check minecraft version of existing file, somehow - put the version in the filename maybe?
-		//      maybe have a mappings folder and have files for each MC version
 		var steelwoolFolder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT);
 		var mappingFile = steelwoolFolder.resolve("intermediary_to_tsrg.tiny");
 		var mappingFile2 = steelwoolFolder.resolve("intermediary_to_tsrg_temp_hack.tiny");
-		if (mappingFile.toFile().exists() && mappingFile2.toFile().exists()) {
+		// The table is only valid for a single minecraft version and version of the embedded mappings, which are both stored in the file
+		var tableFile = steelwoolFolder.resolve("mappings").resolve(TARGET_VERSION + ".bin");
+
+		String contentHash;
+		try {
+			contentHash = getEmbeddedMappingsHash();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read embedded mappings", e);
+		}
+
+		if (Files.exists(tableFile)) {
 			try {
-				return simpleMappings(mappingFile, mappingFile2);
-			} catch(IOException e) {
-				Constants.LOG.warn("Failed to load existing mappings file, regenerating it...");
+				var mappings = loadMappingTable(tableFile, contentHash);
+				StartupTimings.cacheLookup("mappings", TARGET_VERSION, mappings != null);
+				if (mappings != null) return mappings;
+				Constants.LOG.info("Existing mappings file is outdated, regenerating it...");
+			} catch (IOException e) {
+				Constants.LOG.warn("Failed to load existing mappings file, regenerating it...", e);
 			}
 		}
 
-		applyMojangClassNames(mappingFile, mappingFile2);
+		try (var ignored = StartupTimings.phase("mojangMappings")) {
+			applyMojangClassNames(mappingFile, mappingFile2);
+		}
 
-		try {
-			return simpleMappings(mappingFile, mappingFile2);
+		try (var ignored = StartupTimings.phase("mappingsGenerate")) {
+			MappingTable.write(tableFile, TARGET_VERSION, contentHash, parseTinyMappings(mappingFile, mappingFile2), ID_FORMATS);
+			return Objects.requireNonNull(loadMappingTable(tableFile, contentHash));
 		} catch(IOException e) {
-			throw new RuntimeException("Failed to generate and load mappings file");
+			throw new RuntimeException("Failed to generate and load mappings file", e);
 		}
 	}
 
-	// TODO what do we do if the user doesn't have an internet connection and we don't have mapping data?
-	//      probably want to fail more gracefully instead of crashing
 	/**
-	 * Download the official Mojang classnames and apply them to the intermediary->TSRG data embedded in the mod jar
+	 * Get the official Mojang classnames and apply them to the intermediary->TSRG data embedded in the mod jar
 	 * @param outputFile the file to write the remapped mapping data to
 	 */
 	private static void applyMojangClassNames(Path outputFile, Path outputFile2) {
 		try {
-			var url = new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json");
-			JsonElement data = Utils.readJson(url);
-			var versions = data.getAsJsonObject().getAsJsonArray("versions");
-
-			URL versionDataUrl = null;
-
-			for (var version : versions) {
-				if (version.getAsJsonObject().getAsJsonPrimitive("id").getAsString().equals(TARGET_VERSION)) {
-					versionDataUrl = new URL(version.getAsJsonObject().getAsJsonPrimitive("url").getAsString());
-					break;
-				}
-			}
-
-			JsonElement versionData = Utils.readJson(versionDataUrl);
-
-			var downloads = versionData.getAsJsonObject().getAsJsonObject("downloads");
-			var clientMappingsUrl = new URL(downloads.getAsJsonObject("client_mappings").getAsJsonPrimitive("url").getAsString());
-			var serverMappingsUrl = new URL(downloads.getAsJsonObject("server_mappings").getAsJsonPrimitive("url").getAsString());
-
-			var clientMojangClassMappings = getMojangClassMappings(clientMappingsUrl);
-			var serverMojangClassMappings = getMojangClassMappings(serverMappingsUrl);
+			var classMappings = MojangArtifacts.getClassMappings(TARGET_VERSION);
+			var clientMojangClassMappings = classMappings.client();
+			var serverMojangClassMappings = classMappings.server();
 
 			var mojangClassMappings = new HashMap<>(clientMojangClassMappings);
 			serverMojangClassMappings.forEach((key, value) -> mojangClassMappings.merge(key, value, (oldValue, newValue) -> {assert oldValue.equals(newValue); return oldValue;}));
@@ -191,77 +231,80 @@ public class Mappings {
 				}
 			}
 		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Mappings failed");
-		}
-	}
-
-	/**
-	 * Download the official Mojang mappings, and extract the class name data
-	 * @param url the URL to download the mapping data from
-	 * @return a map of obfuscated class names to official class names
-	 */
-	private static Map<String, String> getMojangClassMappings(URL url) throws IOException {
-		try (var stream = url.openStream()) {
-			return new BufferedReader(new InputStreamReader(stream))
-					.lines()
-					// I think they indent using spaces, not tabs, but just in case
-					.filter(line -> !line.isEmpty() && !line.startsWith("#") && !line.startsWith(" ") && !line.startsWith("\t"))
-					.map(line -> {
-						var terms = line.strip().replace(".", "/").split(" +");
-						var obfName = terms[2].substring(0, terms[2].length()-1);
-						var mojangName = terms[0];
-						return new Pair<>(obfName, mojangName);
-					})
-					.collect(Collectors.toMap(Pair::getA, Pair::getB));
+			throw new RuntimeException("Mappings failed", e);
 		}
 	}
 
 	/**
 	 * ASM remapper class for remapping mod classes from intermediary to TSRG
+	 *
+	 * <p>This only reads from the mapping data and class hierarchy, so a single instance can be shared between threads. Resolved method names are cached in concurrent maps,
+	 * so each owner's hierarchy is only walked once per method name.</p>
 	 */
 	public static class SteelwoolRemapper extends Remapper {
 		private final SimpleMappingData mappings;
-		private final Map<String, FabricToForgeConverter.ClassData> classes;
+		private final ClassHierarchy hierarchy;
+		/** Resolved method names, per owner class */
+		private final ConcurrentHashMap<String, OwnerMethods> ownerMethods = new ConcurrentHashMap<>();
 
-		public SteelwoolRemapper(SimpleMappingData mappings, Map<String, FabricToForgeConverter.ClassData> classes) {
+		public SteelwoolRemapper(SimpleMappingData mappings, ClassHierarchy hierarchy) {
 			this.mappings = mappings;
-			this.classes = classes;
+			this.hierarchy = hierarchy;
 		}
 
 		@Override
 		public String map(String typeName) {
-			return mappings.classes.containsKey(typeName) ? mappings.classes.get(typeName) : super.map(typeName);
+			var mapped = mappings.classes.get(typeName);
+			return mapped != null ? mapped : super.map(typeName);
 		}
 
 		@Override
 		public String mapMethodName(String owner, String name, String descriptor) {
-			// Temporary hack for slightly better compatibility until we rewrite the remapper to properly consider context
-			var tempHackKey = owner + "::" + name;
-			if (mappings.temporaryMethodSpecialCase.containsKey(tempHackKey)) {
-				return mappings.temporaryMethodSpecialCase.get(tempHackKey);
+			// Resolution only depends on the owner and name (intermediary method names are unique), so the descriptor isn't part of the key
+			var methods = ownerMethods.get(owner);
+			if (methods == null) {
+				methods = ownerMethods.computeIfAbsent(owner, this::createOwnerMethods);
 			}
-			// TODO this is incredibly inefficient - fine for now because it's temporary(TM)
-			if (classes.containsKey(owner)) {
-				var value = classes.get(owner).getHierarchy().map(parent -> {
-					var key = parent + "::" + name;
-					if (mappings.temporaryMethodSpecialCase.containsKey(key)) {
-						return mappings.temporaryMethodSpecialCase.get(key);
-					}
-					return null;
-				}).filter(Objects::nonNull).findFirst();
-				if (value.isPresent()) {
-					System.out.println(owner);
-					System.out.println(value.get());
-				}
-				if (value.isPresent()) return value.get();
+			var resolved = methods.resolved.get(name);
+			if (resolved == null) {
+				resolved = resolveMethodName(methods, name);
+				methods.resolved.putIfAbsent(name, resolved);
+			}
+			return resolved;
+		}
+
+		private OwnerMethods createOwnerMethods(String owner) {
+			var ancestors = hierarchy.getAncestors(owner);
+			// Classes that aren't in the hierarchy only have special cases for themselves
+			return new OwnerMethods(ancestors != null ? ancestors : new String[] {owner});
+		}
+
+		private String resolveMethodName(OwnerMethods methods, String name) {
+			// Temporary hack for slightly better compatibility until we rewrite the remapper to properly consider context;
+			// the owner itself comes first, followed by its ancestors in the same order as before
+			for (var ancestor : methods.ancestors) {
+				var specialCase = mappings.temporaryMethodSpecialCase.get(ancestor + "::" + name);
+				if (specialCase != null) return specialCase;
+			}
+			var mapped = mappings.methods.get(name);
+			return mapped != null ? mapped : name;
+		}
+
+		/**
+		 * Method resolution data for a single owner class
+		 * @param ancestors the owner followed by all of its ancestors, without duplicates
+		 * @param resolved map from method names to resolved method names
+		 */
+		private record OwnerMethods(String[] ancestors, ConcurrentHashMap<String, String> resolved) {
+			OwnerMethods(String[] ancestors) {
+				this(ancestors, new ConcurrentHashMap<>());
 			}
-			return mappings.methods.containsKey(name) ? mappings.methods.get(name) : super.mapMethodName(owner, name, descriptor);
 		}
 
 		@Override
 		public String mapFieldName(String owner, String name, String descriptor) {
-			return mappings.fields.containsKey(name) ? mappings.fields.get(name) : super.mapFieldName(owner, name, descriptor);
+			var mapped = mappings.fields.get(name);
+			return mapped != null ? mapped : super.mapFieldName(owner, name, descriptor);
 		}
 
 		// Not sure if we need to handle any of these?
@@ -342,51 +385,95 @@ public class Mappings {
 	}
 
 
-	private static final Pattern methodPattern = Pattern.compile("method_[0-9]+");
-	private static final Pattern fieldPattern = Pattern.compile("field_[0-9]+");
-	private static final Pattern classPattern = Pattern.compile("^[$/\\w]+class_[0-9]+$");
-	private static final Pattern classDescriptorPattern = Pattern.compile("(?<=L)[$/\\w]+?class_[0-9]+(?=;)");
+	private static final String CLASS_PREFIX = "class_";
+	private static final String METHOD_PREFIX = "method_";
+	private static final String FIELD_PREFIX = "field_";
 
 	/**
 	 * Naively remap an arbitrary string containing methods/fields/classes from intermediary to TSRG
 	 * - this makes several assumptions about the format of the input (TODO document these assumptions)
+	 *
+	 * <p>If the whole string is a class name it is remapped as one; otherwise every {@code method_N} and {@code field_N},
+	 * and every class in an {@code L...class_N;} descriptor, is remapped in a single pass over the string.
+	 * Names without a mapping are left as they are.</p>
 	 * @param mappings the intermediary->TSRG mapping data
 	 * @param input the string to be remapped
 	 * @return the remapped string, or the original string if it could not be remapped
 	 */
-	// TODO this has huge room for optimization
 	public static String naiveRemapString(Mappings.SimpleMappingData mappings, String input) {
+		var length = input.length();
 		// If the string is exactly an intermediary class name we remap it
-		if (classPattern.matcher(input).find()) {
+		if (isNameChar(input, 0) && endOfClassName(input, 0) == length) {
 			var mapped = mappings.classes().get(input);
 			return mapped != null ? mapped : input;
 		}
 
 		// Otherwise we remap any methods/fields or class descriptors found in the string
-		while (true) {
-			var matcher = methodPattern.matcher(input);
-			if (!matcher.find()) break;
-			var start = matcher.start();
-			var end = matcher.end();
-			var value = matcher.group();
-			input = input.substring(0, start) + mappings.methods().get(value) + input.substring(end);
-		}
-		while (true) {
-			var matcher = fieldPattern.matcher(input);
-			if (!matcher.find()) break;
-			var start = matcher.start();
-			var end = matcher.end();
-			var value = matcher.group();
-			input = input.substring(0, start) + mappings.fields().get(value) + input.substring(end);
-		}
-		while (true) {
-			var matcher = classDescriptorPattern.matcher(input);
-			if (!matcher.find()) break;
-			var start = matcher.start();
-			var end = matcher.end();
-			var value = matcher.group();
-			input = input.substring(0, start) + mappings.classes().get(value) + input.substring(end);
+		StringBuilder output = null;
+		// Everything before this has already been copied to the output
+		var copied = 0;
+		var i = 0;
+		while (i < length) {
+			String mapped = null;
+			var tokenStart = i;
+			var tokenEnd = i;
+			var c = input.charAt(i);
+			if (c == 'L') {
+				var end = endOfClassName(input, i + 1);
+				if (end >= 0 && end < length && input.charAt(end) == ';') {
+					tokenStart = i + 1;
+					tokenEnd = end;
+					mapped = mappings.classes().get(input, tokenStart, tokenEnd);
+				}
+			} else if (c == 'm' && input.startsWith(METHOD_PREFIX, i)) {
+				tokenEnd = endOfDigits(input, i + METHOD_PREFIX.length());
+				if (tokenEnd > i + METHOD_PREFIX.length()) mapped = mappings.methods().get(input, i, tokenEnd);
+			} else if (c == 'f' && input.startsWith(FIELD_PREFIX, i)) {
+				tokenEnd = endOfDigits(input, i + FIELD_PREFIX.length());
+				if (tokenEnd > i + FIELD_PREFIX.length()) mapped = mappings.fields().get(input, i, tokenEnd);
+			}
+
+			if (mapped != null) {
+				if (output == null) output = new StringBuilder(length + 16);
+				output.append(input, copied, tokenStart).append(mapped);
+				copied = tokenEnd;
+				i = tokenEnd;
+			} else {
+				i++;
+			}
 		}
-		return input;
+
+		if (output == null) return input;
+		return output.append(input, copied, length).toString();
+	}
+
+	/** @return whether the character at the index is allowed in a class name ({@code [$/\w]}) */
+	private static boolean isNameChar(String string, int index) {
+		if (index >= string.length()) return false;
+		var c = string.charAt(index);
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$' || c == '/';
+	}
+
+	/** @return the index of the first character after a run of digits, starting at the index */
+	private static int endOfDigits(String string, int index) {
+		while (index < string.length() && string.charAt(index) >= '0' && string.charAt(index) <= '9') index++;
+		return index;
+	}
+
+	/**
+	 * Find the end of an intermediary class name
+	 * @param string the string containing the name
+	 * @param start the start of the name
+	 * @return the end of the run of class name characters starting at {@code start}, if that run ends with {@code class_N}
+	 *         (with at least one character before it), otherwise -1
+	 */
+	private static int endOfClassName(String string, int start) {
+		var end = start;
+		while (isNameChar(string, end)) end++;
+		var digitsStart = end;
+		while (digitsStart > start && string.charAt(digitsStart - 1) >= '0' && string.charAt(digitsStart - 1) <= '9') digitsStart--;
+		var prefixStart = digitsStart - CLASS_PREFIX.length();
+		if (digitsStart == end || prefixStart <= start || !string.startsWith(CLASS_PREFIX, prefixStart)) return -1;
+		return end;
 	}
 }
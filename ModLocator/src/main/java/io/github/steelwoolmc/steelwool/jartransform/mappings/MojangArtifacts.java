@@ -0,0 +1,249 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.github.steelwoolmc.steelwool.Constants;
+import io.github.steelwoolmc.steelwool.Options;
+import io.github.steelwoolmc.steelwool.Utils;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Helper class for getting Mojang's official mappings, which can't be embedded in the mod jar
+ *
+ * <p>Downloaded files are cached per minecraft version, and verified against the SHA-1 hashes published in Mojang's version metadata,
+ * so the network is only needed the first time. Alternatively, {@link Options#MAPPINGS_DIR} can point at a folder of mappings
+ * that were downloaded elsewhere, for machines without internet access.</p>
+ *
+ * <p>The client and server mappings are fetched at the same time, and each is parsed while it's being downloaded (or read from the cache).</p>
+ */
+public class MojangArtifacts {
+	private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(Options.DOWNLOAD_TIMEOUT))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+
+	/**
+	 * The class names from the client and server mappings for a minecraft version
+	 * @param client map from obfuscated class names to official class names, from the client mappings
+	 * @param server map from obfuscated class names to official class names, from the server mappings
+	 */
+	public record ClassMappings(Map<String, String> client, Map<String, String> server) {}
+
+	/**
+	 * A mapping file to read
+	 * @param file the local copy of the file
+	 * @param url the URL to download the file from if the local copy is missing or invalid, or null if it can't be downloaded
+	 * @param sha1 the expected hash of the file, or null if it can't be verified
+	 */
+	private record Source(Path file, URI url, String sha1) {}
+
+	/**
+	 * Get the official class names for a minecraft version, from the configured folder, the cache, or by downloading them
+	 * @param version the minecraft version
+	 * @return the class name mappings
+	 */
+	public static ClassMappings getClassMappings(String version) throws IOException {
+		Source client;
+		Source server;
+		if (Options.MAPPINGS_DIR != null) {
+			var folder = Path.of(Options.MAPPINGS_DIR);
+			client = new Source(folder.resolve("client.txt"), null, null);
+			server = new Source(folder.resolve("server.txt"), null, null);
+		} else {
+			var folder = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT.resolve("mojang").resolve(version));
+			try {
+				var downloads = getVersionData(version, folder.resolve("version.json")).getAsJsonObject("downloads");
+				client = getSource(downloads.getAsJsonObject("client_mappings"), folder.resolve("client.txt"));
+				server = getSource(downloads.getAsJsonObject("server_mappings"), folder.resolve("server.txt"));
+			} catch (IOException e) {
+				throw offlineHint(version, e);
+			} catch (JsonParseException | IllegalStateException | ClassCastException | NullPointerException | IllegalArgumentException e) {
+				throw new IOException("Unexpected version metadata format for " + version, e);
+			}
+		}
+
+		var clientFuture = readClassMappings(client);
+		var serverFuture = readClassMappings(server);
+		try {
+			return new ClassMappings(clientFuture.join(), serverFuture.join());
+		} catch (CompletionException e) {
+			var cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+			if (cause instanceof IOException ioException) {
+				throw Options.MAPPINGS_DIR != null ? ioException : offlineHint(version, ioException);
+			}
+			throw e;
+		}
+	}
+
+	private static IOException offlineHint(String version, IOException cause) {
+		return new IOException(String.format(
+				"Failed to get the official mappings for %s; without internet access, download client.txt and server.txt for %s " +
+				"and set -Dsteelwool.mappingsDir to the folder containing them", version, version), cause);
+	}
+
+	private static Source getSource(JsonObject artifact, Path file) {
+		return new Source(file, URI.create(artifact.getAsJsonPrimitive("url").getAsString()), artifact.getAsJsonPrimitive("sha1").getAsString());
+	}
+
+	/**
+	 * Read the class names from a mapping file, downloading it first if necessary
+	 * @param source the mapping file to read
+	 * @return a future for the map from obfuscated class names to official class names
+	 */
+	private static CompletableFuture<Map<String, String>> readClassMappings(Source source) {
+		return CompletableFuture.supplyAsync(() -> {
+			if (!Files.isRegularFile(source.file())) {
+				StartupTimings.cacheLookup("mojang", source.file().getFileName().toString(), false);
+				return null;
+			}
+			try (var stream = Files.newInputStream(source.file())) {
+				var digest = source.sha1() != null ? Utils.newSha1() : null;
+				var classMappings = parse(stream, digest, null);
+				var valid = digest == null || HexFormat.of().formatHex(digest.digest()).equals(source.sha1());
+				StartupTimings.cacheLookup("mojang", source.file().getFileName().toString(), valid);
+				if (valid) return classMappings;
+				LOG.warn("Cached {} doesn't match the expected hash, downloading it again", source.file().getFileName());
+				return null;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).thenCompose(classMappings -> {
+			if (classMappings != null) return CompletableFuture.completedFuture(classMappings);
+			if (source.url() == null) throw new UncheckedIOException(new IOException("Missing mappings file " + source.file()));
+			LOG.info("Downloading {}", source.file().getFileName());
+			return HTTP_CLIENT.sendAsync(newRequest(source.url()), HttpResponse.BodyHandlers.ofInputStream())
+					.thenApply(response -> downloadClassMappings(source, response));
+		});
+	}
+
+	/**
+	 * Parse a mapping file while downloading it, saving it to the cache at the same time
+	 * @param source the mapping file being downloaded
+	 * @param response the response to read the file from
+	 * @return a map of obfuscated class names to official class names
+	 */
+	private static Map<String, String> downloadClassMappings(Source source, HttpResponse<InputStream> response) {
+		// Download to a temporary file first, so that a failed or corrupted download never replaces a good file
+		var tempFile = source.file().resolveSibling(source.file().getFileName() + ".tmp");
+		try (var stream = response.body()) {
+			if (response.statusCode() != 200) throw new IOException(String.format("Got status %d when downloading %s", response.statusCode(), source.url()));
+			var digest = Utils.newSha1();
+			Map<String, String> classMappings;
+			try (var output = Files.newOutputStream(tempFile)) {
+				classMappings = parse(stream, digest, output);
+			}
+			var actualHash = HexFormat.of().formatHex(digest.digest());
+			if (!actualHash.equals(source.sha1())) {
+				throw new IOException(String.format("Downloaded %s has hash %s, expected %s", source.url(), actualHash, source.sha1()));
+			}
+			Files.move(tempFile, source.file(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return classMappings;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Parse the class names from a ProGuard mapping file, in a single pass over the data
+	 * @param stream the stream to read the file from
+	 * @param digest a digest to update with the file's contents, or null
+	 * @param copy a stream to copy the file's contents to, or null
+	 * @return a map of obfuscated class names to official class names
+	 */
+	private static Map<String, String> parse(InputStream stream, MessageDigest digest, OutputStream copy) throws IOException {
+		var parser = new ProguardClassParser();
+		var buffer = new byte[64 * 1024];
+		int read;
+		while ((read = stream.read(buffer)) > 0) {
+			if (digest != null) digest.update(buffer, 0, read);
+			if (copy != null) copy.write(buffer, 0, read);
+			parser.write(buffer, 0, read);
+		}
+		parser.close();
+		return parser.getClassMappings();
+	}
+
+	private static HttpRequest newRequest(URI url) {
+		// The timeout only covers waiting for the response to start; mapping files are large, so the body may take longer
+		return HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(Options.DOWNLOAD_TIMEOUT)).GET().build();
+	}
+
+	/**
+	 * Get the metadata for a minecraft version, downloading it if it isn't cached yet
+	 * @param version the minecraft version
+	 * @param file where the metadata is cached
+	 * @return the version metadata
+	 */
+	private static JsonObject getVersionData(String version, Path file) throws IOException {
+		// The version metadata never changes once released, so the cached copy is used as is; it was verified when it was downloaded
+		if (Files.isRegularFile(file)) {
+			try (var reader = Files.newBufferedReader(file)) {
+				return JsonParser.parseReader(reader).getAsJsonObject();
+			} catch (JsonParseException | IllegalStateException e) {
+				LOG.warn("Cached version metadata for {} is invalid, downloading it again", version);
+			}
+		}
+
+		LOG.info("Downloading version metadata for {}", version);
+		var manifest = JsonParser.parseString(new String(send(URI.create(Options.VERSION_MANIFEST_URL)), StandardCharsets.UTF_8)).getAsJsonObject();
+		for (var element : manifest.getAsJsonArray("versions")) {
+			var entry = element.getAsJsonObject();
+			if (!entry.getAsJsonPrimitive("id").getAsString().equals(version)) continue;
+
+			var data = send(URI.create(entry.getAsJsonPrimitive("url").getAsString()));
+			var expectedHash = entry.getAsJsonPrimitive("sha1").getAsString();
+			var actualHash = HexFormat.of().formatHex(Utils.newSha1().digest(data));
+			if (!actualHash.equals(expectedHash)) {
+				throw new IOException(String.format("Version metadata for %s has hash %s, expected %s", version, actualHash, expectedHash));
+			}
+			var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(tempFile, data);
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return JsonParser.parseString(new String(data, StandardCharsets.UTF_8)).getAsJsonObject();
+		}
+		throw new IOException("Version " + version + " is not in the version manifest");
+	}
+
+	/**
+	 * Download a small file
+	 * @param url the URL to download
+	 * @return the contents of the file
+	 */
+	private static byte[] send(URI url) throws IOException {
+		try {
+			var response = HTTP_CLIENT.send(newRequest(url), HttpResponse.BodyHandlers.ofByteArray());
+			if (response.statusCode() != 200) throw new IOException(String.format("Got status %d when downloading %s", response.statusCode(), url));
+			return response.body();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + url, e);
+		}
+	}
+}
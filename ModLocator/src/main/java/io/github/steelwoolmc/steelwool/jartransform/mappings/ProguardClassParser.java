@@ -0,0 +1,84 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser for the class lines of ProGuard-format mapping files (as used by Mojang's official mappings)
+ *
+ * <p>Data is written to this stream as it arrives, so a file can be parsed while it's being downloaded.
+ * Member lines (which are indented) and comments make up most of the file; they are skipped byte by byte, without creating any strings.
+ * Class lines ({@code net.minecraft.Foo -> abc:}) are turned into a single entry each, without splitting.</p>
+ */
+class ProguardClassParser extends OutputStream {
+	private static final String ARROW = " -> ";
+
+	private final Map<String, String> classMappings = new HashMap<>();
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	private boolean atLineStart = true;
+	private boolean skippingLine = false;
+
+	@Override
+	public void write(int b) {
+		accept((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		for (var i = offset; i < offset + length; i++) {
+			accept(bytes[i]);
+		}
+	}
+
+	private void accept(byte b) {
+		if (b == '\n') {
+			endLine();
+			return;
+		}
+		if (atLineStart) {
+			atLineStart = false;
+			skippingLine = b == ' ' || b == '\t' || b == '#';
+		}
+		if (skippingLine) return;
+		if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+		line[lineLength++] = b;
+	}
+
+	private void endLine() {
+		if (!skippingLine && lineLength > 0) parseClassLine();
+		lineLength = 0;
+		atLineStart = true;
+		skippingLine = false;
+	}
+
+	private void parseClassLine() {
+		var end = lineLength;
+		while (end > 0 && (line[end - 1] == '\r' || line[end - 1] == ' ')) end--;
+		if (end == 0 || line[end - 1] != ':') return;
+		var text = new String(line, 0, end - 1, StandardCharsets.UTF_8);
+		var arrowIndex = text.indexOf(ARROW);
+		if (arrowIndex < 0) return;
+		var mojangName = text.substring(0, arrowIndex).replace('.', '/');
+		var obfName = text.substring(arrowIndex + ARROW.length()).replace('.', '/');
+		classMappings.put(obfName, mojangName);
+	}
+
+	/**
+	 * Parse any remaining data, for files that don't end with a newline
+	 */
+	@Override
+	public void close() {
+		endLine();
+	}
+
+	/**
+	 * @return a map of obfuscated class names to official class names, for all class lines written so far
+	 */
+	public Map<String, String> getClassMappings() {
+		return classMappings;
+	}
+}
@@ -0,0 +1,140 @@
+package io.github.steelwoolmc.steelwool.jartransform.zip;
+
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reference-counted cache of open {@link ZipReader}s, so that the stages of loading that read the same jar share a single reader,
+ * and the jar's central directory is only parsed once
+ *
+ * <p>Each reader is kept for as long as any handle to it is open, and closed (unmapping the jar) as soon as its last handle is closed.
+ * The parsed central directory of each jar is kept for the lifetime of the instance though, so a stage that opens a jar again after
+ * an earlier stage closed it only has to read the file, not parse it again. Instances are therefore meant to be used for a single
+ * load of the mods, and then dropped.</p>
+ *
+ * <p>Instances are safe to use from multiple threads. Different jars can be opened in parallel.</p>
+ */
+public class JarHandles {
+	private final Map<Path, SharedReader> readers = new HashMap<>();
+	/** The central directories of all jars opened so far, with the file attributes they were read with */
+	private final Map<Path, CachedDirectory> directories = new ConcurrentHashMap<>();
+
+	private record CachedDirectory(long size, FileTime lastModified, ZipReader.Directory directory) {}
+
+	/**
+	 * Get a handle to a jar, opening it if no other handle to it is open
+	 * @param path the path of the jar
+	 * @return the handle, to be closed once the jar is no longer needed
+	 */
+	public Handle acquire(Path path) throws IOException {
+		SharedReader shared;
+		boolean cached;
+		synchronized (this) {
+			shared = readers.get(path);
+			cached = shared != null;
+			if (!cached) {
+				shared = new SharedReader(path);
+				readers.put(path, shared);
+			}
+			shared.refCount++;
+		}
+		// Otherwise the lookup is recorded when the jar is opened, depending on whether its central directory is known
+		if (cached) StartupTimings.cacheLookup("jarHandles", path.getFileName().toString(), true);
+
+		try {
+			return new Handle(this, shared, shared.get());
+		} catch (IOException | RuntimeException e) {
+			release(shared);
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a jar, reusing its central directory if it was opened before and hasn't changed since
+	 * @param path the path of the jar
+	 * @return the reader
+	 */
+	private ZipReader open(Path path) throws IOException {
+		var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		var cached = directories.get(path);
+		var reuse = cached != null && cached.size() == attributes.size() && cached.lastModified().equals(attributes.lastModifiedTime());
+		StartupTimings.cacheLookup("jarHandles", path.getFileName().toString(), reuse);
+
+		var reader = ZipReader.open(path, reuse ? cached.directory() : null);
+		if (!reuse) directories.put(path, new CachedDirectory(attributes.size(), attributes.lastModifiedTime(), reader.getDirectory()));
+		return reader;
+	}
+
+	private synchronized void release(SharedReader shared) {
+		if (--shared.refCount == 0) {
+			readers.remove(shared.path, shared);
+			shared.close();
+		}
+	}
+
+	/**
+	 * A reader shared by all handles to the same jar
+	 */
+	private class SharedReader {
+		private final Path path;
+		/** The number of open handles; guarded by the cache */
+		private int refCount;
+		private ZipReader reader;
+
+		private SharedReader(Path path) {
+			this.path = path;
+		}
+
+		/**
+		 * @return the reader, opening it if this is the first handle to the jar
+		 */
+		private synchronized ZipReader get() throws IOException {
+			// Not opened while holding the cache's lock, so that different jars can be opened in parallel
+			if (reader == null) reader = open(path);
+			return reader;
+		}
+
+		private synchronized void close() {
+			if (reader != null) reader.close();
+		}
+	}
+
+	/**
+	 * An open handle to a jar
+	 */
+	public static class Handle implements Closeable {
+		private final JarHandles owner;
+		private final SharedReader shared;
+		private final ZipReader reader;
+		private boolean closed;
+
+		private Handle(JarHandles owner, SharedReader shared, ZipReader reader) {
+			this.owner = owner;
+			this.shared = shared;
+			this.reader = reader;
+		}
+
+		/**
+		 * @return the reader for the jar; must not be used after the handle is closed
+		 */
+		public ZipReader reader() {
+			return reader;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (closed) return;
+			closed = true;
+			owner.release(shared);
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package io.github.steelwoolmc.steelwool.jartransform.zip;
+
+import io.github.steelwoolmc.steelwool.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal read-only zip reader, that gives access to the raw (still compressed) data of each entry
+ *
+ * <p>Unlike {@link java.util.zip.ZipFile} or the zip {@link java.nio.file.FileSystem}, this allows entries to be copied into another jar
+ * without being decompressed and recompressed. Only the central directory is parsed up front.</p>
+ *
+ * <p>Small files are read into the heap, so that the file itself isn't kept open. Larger files are memory-mapped instead, and are unmapped
+ * as soon as the reader is closed, so that the file can be deleted or replaced again (which Windows doesn't allow while it is mapped).
+ * Buffers returned by a reader (e.g. from {@link #getRawData(Entry)}) must therefore not be used once the reader has been closed,
+ * and the file should not be modified while the reader is open; accessing a mapped file that was truncated crashes the JVM.</p>
+ *
+ * <p>Instances are safe to use from multiple threads, but must not be closed while any thread is still using them.</p>
+ */
+public class ZipReader implements Closeable {
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_SIGNATURE = 0x06054b50;
+	static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_SIZE = 22;
+	static final int ZIP64_LOCATOR_SIZE = 20;
+	static final int ZIP64_EXTRA_ID = 0x0001;
+	/** Files up to this size are read into the heap rather than being memory-mapped */
+	private static final long MAX_HEAP_SIZE = 16 * 1024 * 1024;
+
+	private final Path path;
+	private final ByteBuffer buffer;
+	/** Whether the buffer is a memory mapping that has to be released on close */
+	private final boolean mapped;
+	private final Directory directory;
+	private volatile boolean closed = false;
+
+	private ZipReader(Path path, ByteBuffer buffer, boolean mapped, Directory directory) throws IOException {
+		this.path = path;
+		this.buffer = buffer;
+		this.mapped = mapped;
+		this.directory = directory != null && directory.size == buffer.limit() ? directory : readDirectory();
+	}
+
+	/**
+	 * Open a zip file for reading
+	 * @param path the path of the zip file
+	 * @return the zip reader
+	 */
+	public static ZipReader open(Path path) throws IOException {
+		return open(path, null);
+	}
+
+	/**
+	 * Open a zip file for reading, reusing its central directory from an earlier reader
+	 * @param path the path of the zip file
+	 * @param directory the central directory of the file, from {@link #getDirectory()} of an earlier reader for the same file,
+	 *                  or null to parse it; it must only be passed if the file hasn't changed since, and is ignored if the size differs
+	 * @return the zip reader
+	 */
+	public static ZipReader open(Path path, Directory directory) throws IOException {
+		// Only files on the default file system can be mapped; anything else is always read into the heap
+		if (path.getFileSystem() != FileSystems.getDefault()) {
+			var data = Files.readAllBytes(path);
+			return new ZipReader(path, ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN), false, directory);
+		}
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			var size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new ZipException("Zip file is too large: " + path);
+			if (size <= MAX_HEAP_SIZE) {
+				var buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) throw new ZipException("Zip file was truncated while being read: " + path);
+				}
+				return new ZipReader(path, buffer.flip().order(ByteOrder.LITTLE_ENDIAN), false, directory);
+			}
+			// The mapping stays valid after the channel is closed
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+			try {
+				return new ZipReader(path, buffer, true, directory);
+			} catch (IOException | RuntimeException e) {
+				Utils.getUnsafe().invokeCleaner(buffer);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return the path of the zip file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return a read-only view of the whole zip file
+	 */
+	public ByteBuffer getData() {
+		ensureOpen();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the size of the zip file in bytes
+	 */
+	public long getSize() {
+		return buffer.limit();
+	}
+
+	/**
+	 * @return all entries in the zip file, in central directory order; if several entries have the same name, only the first is included
+	 */
+	public List<Entry> getEntries() {
+		return directory.entries;
+	}
+
+	/**
+	 * Get an entry by name
+	 * @param name the name of the entry, without a leading {@code /}
+	 * @return the entry, or null if there is no entry with that name
+	 */
+	public Entry getEntry(String name) {
+		return directory.entriesByName.get(name);
+	}
+
+	/**
+	 * @return the parsed central directory, which stays valid after the reader is closed
+	 */
+	public Directory getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Get the raw data of an entry, as it is stored in the zip file
+	 * @param entry the entry to get the data of
+	 * @return a read-only view of the entry's (possibly compressed) data
+	 */
+	public ByteBuffer getRawData(Entry entry) throws IOException {
+		ensureOpen();
+		var headerOffset = (int) entry.localHeaderOffset();
+		if (buffer.getInt(headerOffset) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + entry.name() + " in " + path);
+		}
+		var nameLength = Short.toUnsignedInt(buffer.getShort(headerOffset + 26));
+		var extraLength = Short.toUnsignedInt(buffer.getShort(headerOffset + 28));
+		var dataOffset = headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+		if (dataOffset + entry.compressedSize() > buffer.limit()) {
+			throw new ZipException("Truncated data for " + entry.name() + " in " + path);
+		}
+		return buffer.slice(dataOffset, (int) entry.compressedSize()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Read and decompress the contents of an entry
+	 * @param entry the entry to read
+	 * @return the entry's uncompressed contents
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		if (entry.size() > Integer.MAX_VALUE) throw new ZipException("Entry is too large: " + entry.name());
+		var data = getRawData(entry);
+		var output = new byte[(int) entry.size()];
+		switch (entry.method()) {
+			case Entry.STORED -> data.get(output);
+			case Entry.DEFLATED -> {
+				var inflater = new Inflater(true);
+				try {
+					inflater.setInput(data);
+					var read = 0;
+					while (read < output.length && !inflater.finished()) {
+						var count = inflater.inflate(output, read, output.length - read);
+						if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+						read += count;
+					}
+					if (read != output.length) throw new ZipException("Unexpected end of data for " + entry.name() + " in " + path);
+				} catch (DataFormatException e) {
+					throw new ZipException("Invalid compressed data for " + entry.name() + " in " + path + ": " + e.getMessage());
+				} finally {
+					inflater.end();
+				}
+			}
+			default -> throw new ZipException("Unsupported compression method " + entry.method() + " for " + entry.name() + " in " + path);
+		}
+		return output;
+	}
+
+	private Directory readDirectory() throws IOException {
+		var allEntries = readCentralDirectory();
+		var uniqueEntries = new ArrayList<Entry>(allEntries.size());
+		var entriesByName = new HashMap<String, Entry>(allEntries.size() * 2);
+		for (var entry : allEntries) {
+			// Zip files can contain several entries with the same name; only the first one is used, both here and by getEntry
+			if (entriesByName.putIfAbsent(entry.name(), entry) == null) uniqueEntries.add(entry);
+		}
+		return new Directory(buffer.limit(), Collections.unmodifiableList(uniqueEntries), entriesByName);
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		var endOffset = findEndOfCentralDirectory();
+		long entryCount = Short.toUnsignedInt(buffer.getShort(endOffset + 10));
+		long centralDirectorySize = Integer.toUnsignedLong(buffer.getInt(endOffset + 12));
+		long centralDirectoryOffset = Integer.toUnsignedLong(buffer.getInt(endOffset + 16));
+
+		// Zip64 archives store the real values in a separate record, found through a locator directly before the normal end record
+		var locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+		if (locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+			var zip64EndOffset = buffer.getLong(locatorOffset + 8);
+			if (zip64EndOffset < 0 || zip64EndOffset > locatorOffset || buffer.getInt((int) zip64EndOffset) != ZIP64_END_SIGNATURE) {
+				throw new ZipException("Invalid zip64 end of central directory in " + path);
+			}
+			entryCount = buffer.getLong((int) zip64EndOffset + 32);
+			centralDirectorySize = buffer.getLong((int) zip64EndOffset + 40);
+			centralDirectoryOffset = buffer.getLong((int) zip64EndOffset + 48);
+		}
+
+		if (centralDirectoryOffset + centralDirectorySize > endOffset || entryCount > centralDirectorySize / CENTRAL_HEADER_SIZE) {
+			throw new ZipException("Invalid central directory in " + path);
+		}
+
+		var entries = new ArrayList<Entry>((int) entryCount);
+		var offset = (int) centralDirectoryOffset;
+		for (long i = 0; i < entryCount; i++) {
+			if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory entry in " + path);
+			}
+			var flags = Short.toUnsignedInt(buffer.getShort(offset + 8));
+			var method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+			var dosTime = buffer.getInt(offset + 12);
+			var crc = Integer.toUnsignedLong(buffer.getInt(offset + 16));
+			long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+			long size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+			var nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+			var extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+			var commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+			long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+
+			if ((flags & 1) != 0) throw new ZipException("Encrypted entries are not supported, in " + path);
+
+			var nameBytes = new byte[nameLength];
+			buffer.get(offset + CENTRAL_HEADER_SIZE, nameBytes);
+			var name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			// Zip64 extra field; only the values that overflowed in the main header are present, in this order
+			var extraOffset = offset + CENTRAL_HEADER_SIZE + nameLength;
+			var extraEnd = extraOffset + extraLength;
+			while (extraOffset + 4 <= extraEnd) {
+				var id = Short.toUnsignedInt(buffer.getShort(extraOffset));
+				var length = Short.toUnsignedInt(buffer.getShort(extraOffset + 2));
+				if (id == ZIP64_EXTRA_ID) {
+					var valueOffset = extraOffset + 4;
+					if (size == 0xFFFFFFFFL) { size = buffer.getLong(valueOffset); valueOffset += 8; }
+					if (compressedSize == 0xFFFFFFFFL) { compressedSize = buffer.getLong(valueOffset); valueOffset += 8; }
+					if (localHeaderOffset == 0xFFFFFFFFL) { localHeaderOffset = buffer.getLong(valueOffset); }
+				}
+				extraOffset += 4 + length;
+			}
+
+			if (localHeaderOffset + LOCAL_HEADER_SIZE > centralDirectoryOffset) {
+				throw new ZipException("Invalid local header offset for " + name + " in " + path);
+			}
+
+			entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset, dosTime));
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	private int findEndOfCentralDirectory() throws ZipException {
+		// The end record is at the very end of the file, followed only by a comment of up to 65535 bytes
+		var minOffset = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+		for (var offset = buffer.limit() - END_SIZE; offset >= minOffset; offset--) {
+			if (buffer.getInt(offset) == END_SIGNATURE) return offset;
+		}
+		throw new ZipException("Could not find end of central directory in " + path);
+	}
+
+	private void ensureOpen() {
+		if (closed) throw new IllegalStateException("Zip reader for " + path + " has already been closed");
+	}
+
+	/**
+	 * Close the reader, releasing the memory mapping of the file (if any)
+	 *
+	 * <p>No buffers returned by this reader may be used afterwards.</p>
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+		// Otherwise the mapping is only released once the buffer is garbage collected, which may never happen
+		if (mapped) Utils.getUnsafe().invokeCleaner(buffer);
+	}
+
+	/**
+	 * The parsed central directory of a zip file; unlike the reader itself, this doesn't refer to the file's data
+	 */
+	public static final class Directory {
+		private final long size;
+		private final List<Entry> entries;
+		private final Map<String, Entry> entriesByName;
+
+		private Directory(long size, List<Entry> entries, Map<String, Entry> entriesByName) {
+			this.size = size;
+			this.entries = entries;
+			this.entriesByName = entriesByName;
+		}
+	}
+
+	/**
+	 * An entry in a zip file, as described by the central directory
+	 * @param name the name of the entry
+	 * @param method the compression method ({@link #STORED} or {@link #DEFLATED})
+	 * @param crc the CRC-32 of the uncompressed data
+	 * @param compressedSize the size of the data as stored in the zip file
+	 * @param size the size of the uncompressed data
+	 * @param localHeaderOffset the offset of the entry's local header within the zip file
+	 * @param dosTime the last modification time, in MS-DOS format (date in the high 16 bits, time in the low 16 bits)
+	 */
+	public record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset, int dosTime) {
+		public static final int STORED = 0;
+		public static final int DEFLATED = 8;
+
+		/**
+		 * @return whether this entry is a directory
+		 */
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package io.github.steelwoolmc.steelwool.jartransform.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static io.github.steelwoolmc.steelwool.jartransform.zip.ZipReader.*;
+
+/**
+ * Minimal streaming zip writer, that can copy entries from a {@link ZipReader} without recompressing them
+ *
+ * <p>Entries are written in the order they are added. Newly written entries are deflated; copied entries keep their original compression.
+ * Instances are not thread-safe.</p>
+ */
+public class ZipWriter implements Closeable {
+	/** Fixed modification time for generated entries (1980-02-01 00:00, in MS-DOS format), so that output is reproducible */
+	public static final int DEFAULT_DOS_TIME = (2 << 5 | 1) << 16;
+
+	private final OutputStream output;
+	private final WritableByteChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	private final Set<String> names = new HashSet<>();
+	private final List<String> namesInOrder = new ArrayList<>();
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final CRC32 crc = new CRC32();
+	private byte[] deflateBuffer = new byte[64 * 1024];
+	private long offset = 0;
+	private long entryCount = 0;
+
+	/**
+	 * @param output the stream to write the zip file to; this is closed when the writer is closed
+	 */
+	public ZipWriter(OutputStream output) {
+		this.output = output;
+		this.channel = Channels.newChannel(output);
+	}
+
+	/**
+	 * Create a zip writer that writes to a new file
+	 * @param path the path of the file to create
+	 * @return the zip writer
+	 */
+	public static ZipWriter create(Path path) throws IOException {
+		return new ZipWriter(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+	}
+
+	/**
+	 * Check whether an entry has already been written
+	 * @param name the name of the entry
+	 * @return whether an entry with that name has been written
+	 */
+	public boolean contains(String name) {
+		return names.contains(name);
+	}
+
+	/**
+	 * @return the names of all entries written so far, in order
+	 */
+	public List<String> getNames() {
+		return namesInOrder;
+	}
+
+	/**
+	 * Write a new entry, compressing its contents
+	 * @param name the name of the entry
+	 * @param data the uncompressed contents of the entry
+	 */
+	public void write(String name, byte[] data) throws IOException {
+		write(name, data, DEFAULT_DOS_TIME);
+	}
+
+	/**
+	 * Write a new entry, compressing its contents
+	 * @param name the name of the entry
+	 * @param data the uncompressed contents of the entry
+	 * @param dosTime the modification time of the entry, in MS-DOS format
+	 */
+	public void write(String name, byte[] data, int dosTime) throws IOException {
+		crc.reset();
+		crc.update(data);
+
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		var compressedSize = 0;
+		while (!deflater.finished()) {
+			if (compressedSize == deflateBuffer.length) {
+				deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+			}
+			compressedSize += deflater.deflate(deflateBuffer, compressedSize, deflateBuffer.length - compressedSize);
+		}
+
+		writeEntry(name, ZipReader.Entry.DEFLATED, crc.getValue(), compressedSize, data.length, dosTime,
+				ByteBuffer.wrap(deflateBuffer, 0, compressedSize));
+	}
+
+	/**
+	 * Copy an entry from another zip file, without decompressing it
+	 * @param entry the entry to copy
+	 * @param rawData the raw data of the entry, from {@link ZipReader#getRawData(ZipReader.Entry)}
+	 */
+	public void writeRaw(ZipReader.Entry entry, ByteBuffer rawData) throws IOException {
+		writeEntry(entry.name(), entry.method(), entry.crc(), entry.compressedSize(), entry.size(), entry.dosTime(), rawData.duplicate());
+	}
+
+	private void writeEntry(String name, int method, long crc, long compressedSize, long size, int dosTime, ByteBuffer data) throws IOException {
+		if (!names.add(name)) throw new ZipException("Duplicate entry: " + name);
+		if (compressedSize >= 0xFFFFFFFFL || size >= 0xFFFFFFFFL || offset >= 0xFFFFFFFFL) {
+			throw new ZipException("Entry is too large (zip64 entries are not supported): " + name);
+		}
+		namesInOrder.add(name);
+		var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		// Bit 11: names are UTF-8
+		var flags = 1 << 11;
+
+		header.clear();
+		header.putInt(LOCAL_HEADER_SIGNATURE)
+				.putShort((short) 20) // version needed to extract
+				.putShort((short) flags)
+				.putShort((short) method)
+				.putInt(dosTime)
+				.putInt((int) crc)
+				.putInt((int) compressedSize)
+				.putInt((int) size)
+				.putShort((short) nameBytes.length)
+				.putShort((short) 0); // extra length
+		output.write(header.array(), 0, LOCAL_HEADER_SIZE);
+		output.write(nameBytes);
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+
+		header.clear();
+		header.putInt(CENTRAL_HEADER_SIGNATURE)
+				.putShort((short) 20) // version made by
+				.putShort((short) 20) // version needed to extract
+				.putShort((short) flags)
+				.putShort((short) method)
+				.putInt(dosTime)
+				.putInt((int) crc)
+				.putInt((int) compressedSize)
+				.putInt((int) size)
+				.putShort((short) nameBytes.length)
+				.putShort((short) 0) // extra length
+				.putShort((short) 0) // comment length
+				.putShort((short) 0) // disk number
+				.putShort((short) 0) // internal attributes
+				.putInt(0) // external attributes
+				.putInt((int) offset);
+		centralDirectory.write(header.array(), 0, CENTRAL_HEADER_SIZE);
+		centralDirectory.write(nameBytes);
+
+		offset += LOCAL_HEADER_SIZE + nameBytes.length + compressedSize;
+		entryCount++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			var centralDirectoryOffset = offset;
+			var centralDirectorySize = centralDirectory.size();
+			centralDirectory.writeTo(output);
+
+			var end = ByteBuffer.allocate(56 + ZIP64_LOCATOR_SIZE + END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			var needsZip64 = entryCount >= 0xFFFF || centralDirectoryOffset >= 0xFFFFFFFFL;
+			if (needsZip64) {
+				var zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+				end.putInt(ZIP64_END_SIGNATURE)
+						.putLong(44) // size of the remaining record
+						.putShort((short) 45) // version made by
+						.putShort((short) 45) // version needed to extract
+						.putInt(0) // disk number
+						.putInt(0) // disk with the central directory
+						.putLong(entryCount) // entries on this disk
+						.putLong(entryCount) // total entries
+						.putLong(centralDirectorySize)
+						.putLong(centralDirectoryOffset);
+				end.putInt(ZIP64_LOCATOR_SIGNATURE)
+						.putInt(0) // disk with the zip64 end record
+						.putLong(zip64EndOffset)
+						.putInt(1); // total disks
+			}
+			end.putInt(END_SIGNATURE)
+					.putShort((short) 0) // disk number
+					.putShort((short) 0) // disk with the central directory
+					.putShort((short) (needsZip64 ? 0xFFFF : entryCount))
+					.putShort((short) (needsZip64 ? 0xFFFF : entryCount))
+					.putInt(centralDirectorySize)
+					.putInt((int) (needsZip64 ? 0xFFFFFFFFL : centralDirectoryOffset))
+					.putShort((short) 0); // comment length
+			output.write(end.array(), 0, end.position());
+		} finally {
+			deflater.end();
+			output.close();
+		}
+	}
+}
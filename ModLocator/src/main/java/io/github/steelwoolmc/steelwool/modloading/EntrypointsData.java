@@ -11,7 +11,7 @@ import java.util.Map;
 
 // TODO we should probably handle entrypoints in a completely different way
 public class EntrypointsData {
-	private final Map<String, List<EntrypointMetadata>> entrypoints;
+	private final Map<String, List<Entry>> entrypoints;
 
 	private static EntrypointsData instance;
 
@@ -27,15 +27,22 @@ public class EntrypointsData {
 		return instance;
 	}
 
-	public void addEntrypoint(String prototype, EntrypointMetadata entrypoint) {
-		entrypoints.computeIfAbsent(prototype, k -> new ArrayList<>()).add(entrypoint);
+	public void addEntrypoint(String modId, String prototype, EntrypointMetadata entrypoint) {
+		entrypoints.computeIfAbsent(prototype, k -> new ArrayList<>()).add(new Entry(modId, entrypoint));
 	}
 
-	public static Map<String, List<EntrypointMetadata>> getEntrypoints() {
+	public static Map<String, List<Entry>> getEntrypoints() {
 		if (instance == null) {
 			Constants.LOG.warn("Steelwool entrypoints were not initialized. This shouldn't happen");
 			return Map.of();
 		}
 		return Collections.unmodifiableMap(instance.entrypoints);
 	}
+
+	/**
+	 * An entrypoint declared by a mod
+	 * @param modId the id of the mod that declared the entrypoint
+	 * @param metadata the entrypoint's metadata
+	 */
+	public record Entry(String modId, EntrypointMetadata metadata) {}
 }
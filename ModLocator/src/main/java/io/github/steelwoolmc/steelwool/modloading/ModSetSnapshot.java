@@ -0,0 +1,187 @@
+package io.github.steelwoolmc.steelwool.modloading;
+
+import io.github.steelwoolmc.steelwool.Options;
+import io.github.steelwoolmc.steelwool.Utils;
+import io.github.steelwoolmc.steelwool.profiling.StartupTimings;
+import net.fabricmc.loader.impl.metadata.EntrypointMetadata;
+import net.minecraftforge.fml.loading.FMLEnvironment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Snapshot of the outcome of Fabric mod discovery, resolution and conversion, so that launches with an unchanged mod set can skip all of it
+ *
+ * <p>A snapshot is only used if its fingerprint matches the current launch. The fingerprint covers the files in the mods folder
+ * (by name, size and modification time), Fabric's dependency overrides, the Steelwool build, the physical side,
+ * and all Steelwool and Fabric system properties.</p>
+ * @param convertedJars the converted mod jars, in the order they were provided to Forge
+ * @param entrypoints the entrypoints of all resolved mods, by entrypoint key
+ */
+public record ModSetSnapshot(List<Path> convertedJars, Map<String, List<EntrypointsData.Entry>> entrypoints) {
+	private static final int MAGIC = 0x5357534E; // "SWSN"
+	/** Bump this whenever the file layout or the snapshotted data changes, so that old files are ignored */
+	private static final int FORMAT_VERSION = 1;
+	private static final String DEPENDENCY_OVERRIDES_NAME = "fabric_loader_dependencies.json";
+
+	/**
+	 * Check whether snapshots can be used with the current options
+	 *
+	 * <p>Lazily remapped mods need the remapper that is only built during conversion.</p>
+	 * @return whether snapshots should be used
+	 */
+	public static boolean isEnabled() {
+		return Options.MOD_SET_SNAPSHOT && !Options.LAZY_REMAPPING;
+	}
+
+	/**
+	 * Compute the fingerprint of everything that affects which mods are loaded and how they are converted
+	 * @param modFolder the mods folder
+	 * @param configFolder the config folder, containing Fabric's dependency overrides
+	 * @return the fingerprint
+	 */
+	public static String computeFingerprint(Path modFolder, Path configFolder) throws IOException {
+		var parts = new ArrayList<String>();
+		parts.add(Utils.getBuildHash());
+		parts.add(FMLEnvironment.dist.name());
+		System.getProperties().stringPropertyNames().stream()
+				.filter(name -> name.startsWith("steelwool.") || name.startsWith("fabric."))
+				.sorted()
+				.forEach(name -> parts.add(name + "=" + System.getProperty(name)));
+
+		// Mod jars are identified by their attributes rather than their contents, so that nothing needs to be read
+		try (var files = Files.list(modFolder)) {
+			for (var file : files.sorted().toList()) {
+				var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				parts.add(file.getFileName() + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+			}
+		}
+
+		var dependencyOverrides = configFolder.resolve(DEPENDENCY_OVERRIDES_NAME);
+		parts.add(Files.isRegularFile(dependencyOverrides) ? Utils.sha256(dependencyOverrides) : "");
+
+		return Utils.sha256(parts.toArray(String[]::new));
+	}
+
+	/**
+	 * Load the snapshot from the last launch
+	 * @param path the path of the snapshot file
+	 * @param fingerprint the fingerprint of the current launch
+	 * @return the snapshot, or null if there is no snapshot for this fingerprint (or its converted jars are missing)
+	 */
+	public static ModSetSnapshot load(Path path, String fingerprint) {
+		if (!Files.isRegularFile(path)) {
+			StartupTimings.cacheLookup("modSet", fingerprint, false);
+			return null;
+		}
+
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(fingerprint)) {
+				StartupTimings.cacheLookup("modSet", fingerprint, false);
+				return null;
+			}
+
+			var jarCount = input.readInt();
+			var convertedJars = new ArrayList<Path>(jarCount);
+			for (var i = 0; i < jarCount; i++) {
+				var jar = Path.of(input.readUTF());
+				var size = input.readLong();
+				// Converted jars may have been evicted by a launch with a different mod set
+				if (!Files.isRegularFile(jar) || Files.size(jar) != size) {
+					LOG.debug("Converted jar {} from the mod set snapshot is missing", jar.getFileName());
+					StartupTimings.cacheLookup("modSet", fingerprint, false);
+					return null;
+				}
+				convertedJars.add(jar);
+			}
+
+			var keyCount = input.readInt();
+			var entrypoints = new LinkedHashMap<String, List<EntrypointsData.Entry>>(keyCount * 2);
+			for (var i = 0; i < keyCount; i++) {
+				var key = input.readUTF();
+				var entryCount = input.readInt();
+				var entries = new ArrayList<EntrypointsData.Entry>(entryCount);
+				for (var j = 0; j < entryCount; j++) {
+					entries.add(new EntrypointsData.Entry(input.readUTF(), new SnapshotEntrypoint(input.readUTF(), input.readUTF())));
+				}
+				entrypoints.put(key, entries);
+			}
+
+			StartupTimings.cacheLookup("modSet", fingerprint, true);
+			return new ModSetSnapshot(convertedJars, entrypoints);
+		} catch (IOException e) {
+			LOG.warn("Failed to read the mod set snapshot, resolving mods again");
+			StartupTimings.cacheLookup("modSet", fingerprint, false);
+			return null;
+		}
+	}
+
+	/**
+	 * Save this snapshot for the next launch
+	 * @param path the path of the snapshot file
+	 * @param fingerprint the fingerprint of the current launch
+	 */
+	public void save(Path path, String fingerprint) {
+		// Write to a temporary file first, so that a crash never leaves a truncated file behind
+		var tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(FORMAT_VERSION);
+				output.writeUTF(fingerprint);
+
+				output.writeInt(convertedJars.size());
+				for (var jar : convertedJars) {
+					output.writeUTF(jar.toAbsolutePath().toString());
+					output.writeLong(Files.size(jar));
+				}
+
+				output.writeInt(entrypoints.size());
+				for (var keyEntrypoints : entrypoints.entrySet()) {
+					output.writeUTF(keyEntrypoints.getKey());
+					output.writeInt(keyEntrypoints.getValue().size());
+					for (var entry : keyEntrypoints.getValue()) {
+						output.writeUTF(entry.modId());
+						output.writeUTF(entry.metadata().getAdapter());
+						output.writeUTF(entry.metadata().getValue());
+					}
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Not fatal, mods will just be resolved again next launch
+			LOG.warn("Failed to save the mod set snapshot", e);
+			try {
+				Files.deleteIfExists(tempPath);
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Entrypoint metadata read back from a snapshot
+	 */
+	private record SnapshotEntrypoint(String adapter, String value) implements EntrypointMetadata {
+		@Override
+		public String getAdapter() {
+			return adapter;
+		}
+
+		@Override
+		public String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package io.github.steelwoolmc.steelwool.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a lookup in one of Steelwool's caches
+ */
+@Name("io.github.steelwoolmc.steelwool.CacheLookup")
+@Label("Steelwool Cache Lookup")
+@Category("Steelwool")
+@Description("A lookup in one of Steelwool's caches, e.g. the converted mod cache")
+@StackTrace(false)
+class CacheLookupEvent extends Event {
+	@Label("Cache")
+	String cache;
+
+	@Label("Subject")
+	String subject;
+
+	@Label("Hit")
+	boolean hit;
+}
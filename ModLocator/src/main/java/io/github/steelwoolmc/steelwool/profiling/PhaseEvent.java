@@ -0,0 +1,23 @@
+package io.github.steelwoolmc.steelwool.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a single Steelwool loading phase, e.g. initializing Knot or transforming one mod jar
+ */
+@Name("io.github.steelwoolmc.steelwool.Phase")
+@Label("Steelwool Phase")
+@Category("Steelwool")
+@Description("A phase of Steelwool's mod loading")
+class PhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Subject")
+	@Description("What the phase is working on, e.g. a mod id or file name; null for phases that only run once")
+	String subject;
+}
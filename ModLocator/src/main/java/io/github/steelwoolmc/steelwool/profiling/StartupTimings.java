@@ -0,0 +1,154 @@
+package io.github.steelwoolmc.steelwool.profiling;
+
+import com.google.gson.stream.JsonWriter;
+import io.github.steelwoolmc.steelwool.Constants;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.steelwoolmc.steelwool.Constants.LOG;
+
+/**
+ * Records how long each Steelwool loading phase takes
+ *
+ * <p>Every phase is emitted as a {@link PhaseEvent} and every cache lookup as a {@link CacheLookupEvent}, for use with Flight Recorder
+ * (e.g. {@code -XX:StartFlightRecording}). The same data is also summarized in a JSON report in the Steelwool folder after each launch,
+ * so that startup times can be tracked without a recording.</p>
+ *
+ * <p>Phases can be nested and can run in parallel, so the total of a phase can be more than the time it took in wall-clock terms.</p>
+ *
+ * <p>All methods are safe to call from multiple threads.</p>
+ */
+public class StartupTimings {
+	private static final String REPORT_NAME = "startup-timings.json";
+	private static final long START_TIME = System.nanoTime();
+
+	private static final Map<String, List<Timing>> phases = new LinkedHashMap<>();
+	/** Map from cache names to the number of hits and misses */
+	private static final Map<String, int[]> cacheLookups = new LinkedHashMap<>();
+
+	private record Timing(String subject, long nanos) {}
+
+	/**
+	 * A phase that is currently running; closing it ends the phase
+	 */
+	public static class Phase implements AutoCloseable {
+		private final PhaseEvent event = new PhaseEvent();
+		private final long startTime = System.nanoTime();
+
+		private Phase(String phase, String subject) {
+			event.phase = phase;
+			event.subject = subject;
+			event.begin();
+		}
+
+		@Override
+		public void close() {
+			event.commit();
+			record(event.phase, event.subject, System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * Start a phase that only runs once
+	 * @param phase the name of the phase
+	 * @return the running phase, to be closed when the phase ends
+	 */
+	public static Phase phase(String phase) {
+		return new Phase(phase, null);
+	}
+
+	/**
+	 * Start a phase that runs once per subject
+	 * @param phase the name of the phase
+	 * @param subject what the phase is working on, e.g. a mod id
+	 * @return the running phase, to be closed when the phase ends
+	 */
+	public static Phase phase(String phase, String subject) {
+		return new Phase(phase, subject);
+	}
+
+	private static synchronized void record(String phase, String subject, long nanos) {
+		phases.computeIfAbsent(phase, k -> new ArrayList<>()).add(new Timing(subject, nanos));
+	}
+
+	/**
+	 * Record a cache lookup
+	 * @param cache the name of the cache
+	 * @param subject what was looked up, e.g. a file name
+	 * @param hit whether the cache contained the entry
+	 */
+	public static void cacheLookup(String cache, String subject, boolean hit) {
+		var event = new CacheLookupEvent();
+		event.cache = cache;
+		event.subject = subject;
+		event.hit = hit;
+		event.commit();
+		synchronized (StartupTimings.class) {
+			cacheLookups.computeIfAbsent(cache, k -> new int[2])[hit ? 0 : 1]++;
+		}
+	}
+
+	/**
+	 * Write the timings recorded so far to the report file; failures are logged, as the report isn't needed to launch
+	 */
+	public static synchronized void writeReport() {
+		var reportPath = FMLPaths.getOrCreateGameRelativePath(Constants.MOD_CACHE_ROOT).resolve(REPORT_NAME);
+		var tempPath = reportPath.resolveSibling(REPORT_NAME + ".tmp");
+		try {
+			try (var writer = new JsonWriter(Files.newBufferedWriter(tempPath))) {
+				writer.setIndent("\t");
+				writer.beginObject();
+				writer.name("version").value(Constants.VERSION);
+				writer.name("totalMillis").value(toMillis(System.nanoTime() - START_TIME));
+
+				writer.name("phases").beginObject();
+				for (var entry : phases.entrySet()) {
+					var timings = entry.getValue();
+					writer.name(entry.getKey()).beginObject();
+					writer.name("count").value(timings.size());
+					writer.name("totalMillis").value(toMillis(timings.stream().mapToLong(Timing::nanos).sum()));
+					writer.name("maxMillis").value(toMillis(timings.stream().mapToLong(Timing::nanos).max().orElse(0)));
+					if (timings.stream().anyMatch(timing -> timing.subject() != null)) {
+						// Slowest first, as those are the interesting ones
+						writer.name("subjects").beginArray();
+						for (var timing : timings.stream().sorted(Comparator.comparingLong(Timing::nanos).reversed()).toList()) {
+							writer.beginObject();
+							writer.name("subject").value(timing.subject());
+							writer.name("millis").value(toMillis(timing.nanos()));
+							writer.endObject();
+						}
+						writer.endArray();
+					}
+					writer.endObject();
+				}
+				writer.endObject();
+
+				writer.name("caches").beginObject();
+				for (var entry : cacheLookups.entrySet()) {
+					writer.name(entry.getKey()).beginObject();
+					writer.name("hits").value(entry.getValue()[0]);
+					writer.name("misses").value(entry.getValue()[1]);
+					writer.endObject();
+				}
+				writer.endObject();
+				writer.endObject();
+			}
+			Files.move(tempPath, reportPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.warn("Failed to write startup timings", e);
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		// Microsecond precision is plenty, and keeps the report readable
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
@@ -0,0 +1,53 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that {@link JarScanCache} keeps the results used by a launch, including ones that were only marked as used
+ */
+class JarScanCacheTest {
+	private static final JarScanCache.ScanResult RESULT = new JarScanCache.ScanResult(
+			List.of(new ClassHierarchy.ClassEntry("com/example/Foo", "net/minecraft/class_1", List.of("net/minecraft/class_2"))),
+			Set.of("com/example/Foo", "net/minecraft/class_1", "net/minecraft/class_2"));
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void storedResultsCanBeReadBack() {
+		new JarScanCache(folder).put("jar", RESULT);
+		assertEquals(RESULT, new JarScanCache(folder).get("jar"));
+	}
+
+	@Test
+	void unusedResultsAreEvicted() {
+		new JarScanCache(folder).put("jar", RESULT);
+
+		var launch = new JarScanCache(folder);
+		launch.evictUnused();
+
+		assertNull(new JarScanCache(folder).get("jar"));
+	}
+
+	@Test
+	void markedResultsSurviveEviction() {
+		// A cold launch scans minecraft, a warm launch reuses the hierarchy index without reading the scan,
+		// and the launch after a mod set change needs the scan again
+		new JarScanCache(folder).put("minecraft", RESULT);
+
+		var warmLaunch = new JarScanCache(folder);
+		warmLaunch.markUsed("minecraft");
+		warmLaunch.evictUnused();
+
+		assertNotNull(new JarScanCache(folder).get("minecraft"));
+	}
+}
@@ -0,0 +1,111 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.jartransform.mappings.Mappings;
+import io.github.steelwoolmc.steelwool.jartransform.mappings.TestMappings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the output of the streaming {@link FabricToForgeConverter#remapRefmap}; this is written the same way as Gson's default
+ * serialization (compact, with HTML characters escaped and nulls in objects left out), which is what refmaps were written with before
+ */
+class RefmapRemapTest {
+	@TempDir
+	Path folder;
+
+	private Mappings.SimpleMappingData createMappings() throws IOException {
+		return TestMappings.create(folder,
+				Map.of("net/minecraft/class_1", "net/minecraft/world/Foo", "net/minecraft/class_2", "net/minecraft/world/Bar"),
+				Map.of("method_10", "m_10_", "method_11", "m_11_"),
+				Map.of("field_20", "f_20_"));
+	}
+
+	@Test
+	void remapsTypicalRefmap() throws IOException {
+		assertRemapsTo("{\"mappings\":{"
+				+ "\"com/example/mixin/FooMixin\":{"
+				+ "\"tick\":\"Lnet/minecraft/world/Foo;m_10_()V\","
+				+ "\"value\":\"Lnet/minecraft/world/Foo;f_20_:Lnet/minecraft/world/Bar;\","
+				+ "\"\\u003cinit\\u003e\":\"Lnet/minecraft/world/Bar;\\u003cinit\\u003e(Lnet/minecraft/world/Foo;)V\","
+				+ "\"target\":\"net/minecraft/world/Foo\"},"
+				+ "\"com/example/mixin/BarMixin\":{\"render\":\"m_11_\",\"unicode\":\"caf\u00e9 \u2603\"}},"
+				+ "\"data\":{\"named:intermediary\":{\"com/example/mixin/FooMixin\":{\"tick\":\"Lnet/minecraft/world/Foo;m_10_()V\"}}}}", """
+				{
+				  "mappings": {
+				    "com/example/mixin/FooMixin": {
+				      "tick": "Lnet/minecraft/class_1;method_10()V",
+				      "value": "Lnet/minecraft/class_1;field_20:Lnet/minecraft/class_2;",
+				      "<init>": "Lnet/minecraft/class_2;<init>(Lnet/minecraft/class_1;)V",
+				      "target": "net/minecraft/class_1"
+				    },
+				    "com/example/mixin/BarMixin": {
+				      "render": "method_11",
+				      "unicode": "caf\\u00e9 \\u2603"
+				    }
+				  },
+				  "data": {
+				    "named:intermediary": {
+				      "com/example/mixin/FooMixin": {
+				        "tick": "Lnet/minecraft/class_1;method_10()V"
+				      }
+				    }
+				  }
+				}
+				""");
+	}
+
+	@Test
+	void copiesOtherValues() throws IOException {
+		// Only strings directly inside a class's mappings are remapped; nulls in objects are dropped, and numbers keep their original form
+		assertRemapsTo("{\"mappings\":{"
+				+ "\"com/example/mixin/FooMixin\":{"
+				+ "\"tick\":\"m_10_\",\"number\":1.50,\"flag\":true,"
+				+ "\"list\":[\"method_10\",1e3,false,null,{\"nested\":\"method_11\"}],"
+				+ "\"nested\":{\"deeper\":\"method_11\"}},"
+				+ "\"notAnObject\":\"method_10\"},"
+				+ "\"data\":{},"
+				+ "\"extra\":{\"method_10\":[\"field_20\"],\"html\":\"\\u003ca href\\u003d\\u0027x\\u0027\\u003e\\u0026\\u003c/a\\u003e\"}}", """
+				{
+				  "mappings": {
+				    "com/example/mixin/FooMixin": {
+				      "tick": "method_10",
+				      "number": 1.50,
+				      "flag": true,
+				      "missing": null,
+				      "list": ["method_10", 1e3, false, null, {"nested": "method_11"}],
+				      "nested": {"deeper": "method_11"}
+				    },
+				    "notAnObject": "method_10"
+				  },
+				  "data": {},
+				  "extra": {"method_10": ["field_20"], "html": "<a href='x'>&</a>"}
+				}
+				""");
+	}
+
+	@Test
+	void remapsCompactRefmap() throws IOException {
+		assertRemapsTo("{\"mappings\":{\"a/B\":{\"x\":\"f_20_\"}},\"data\":{\"named:intermediary\":{\"a/B\":{\"x\":\"f_20_\"}}}}",
+				"{\"mappings\":{\"a/B\":{\"x\":\"field_20\"}},\"data\":{\"named:intermediary\":{\"a/B\":{\"x\":\"field_20\"}}}}");
+	}
+
+	@Test
+	void rejectsTrailingValues() throws IOException {
+		var mappings = createMappings();
+		var refmap = "{\"mappings\":{},\"data\":{}} {}".getBytes(StandardCharsets.UTF_8);
+		assertThrows(IOException.class, () -> FabricToForgeConverter.remapRefmap(mappings, refmap));
+	}
+
+	private void assertRemapsTo(String expected, String refmap) throws IOException {
+		var actual = FabricToForgeConverter.remapRefmap(createMappings(), refmap.getBytes(StandardCharsets.UTF_8));
+		assertEquals(expected, new String(actual, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,91 @@
+package io.github.steelwoolmc.steelwool.jartransform;
+
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipReader;
+import io.github.steelwoolmc.steelwool.jartransform.zip.ZipWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the classes and referenced classes collected by {@link FabricToForgeConverter#scanJar}
+ */
+class ScanJarTest {
+	private static final String CLASS_NAME = "com/example/Foo";
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void collectsDeclaredClasses() throws IOException {
+		var scan = scan(createClass());
+		assertEquals(List.of(new ClassHierarchy.ClassEntry(CLASS_NAME, "net/minecraft/class_4", List.of("net/minecraft/class_5"))), scan.classes());
+	}
+
+	@Test
+	void collectsOwnersAndDescriptorTypes() throws IOException {
+		var referencedClasses = scan(createClass()).referencedClasses();
+		for (var name : List.of(
+				CLASS_NAME,
+				"net/minecraft/class_4",
+				"net/minecraft/class_5",
+				// The owner of a method call, and the types in its descriptor
+				"net/minecraft/class_6",
+				"net/minecraft/class_7",
+				// The type of a field
+				"net/minecraft/class_3",
+				// The interface of a lambda, which only appears in the call site's descriptor
+				"net/minecraft/class_1",
+				// The lambda's parameter, which only appears in method type arguments of the bootstrap method
+				"net/minecraft/class_2")) {
+			assertTrue(referencedClasses.contains(name), name);
+		}
+	}
+
+	private JarScanCache.ScanResult scan(byte[] classData) throws IOException {
+		var jar = folder.resolve("scan.jar");
+		try (var writer = ZipWriter.create(jar)) {
+			writer.write(CLASS_NAME + ".class", classData);
+		}
+		try (var reader = ZipReader.open(jar)) {
+			return FabricToForgeConverter.scanJar(reader);
+		}
+	}
+
+	/**
+	 * @return a class that references minecraft classes through a method call, a field and a lambda
+	 */
+	private static byte[] createClass() {
+		var writer = new ClassWriter(0);
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, CLASS_NAME, null, "net/minecraft/class_4", new String[] {"net/minecraft/class_5"});
+
+		var method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()V", null, null);
+		method.visitCode();
+		method.visitInsn(Opcodes.ACONST_NULL);
+		method.visitMethodInsn(Opcodes.INVOKESTATIC, "net/minecraft/class_6", "method_1", "(Lnet/minecraft/class_7;)V", false);
+		method.visitFieldInsn(Opcodes.GETSTATIC, CLASS_NAME, "field_1", "Lnet/minecraft/class_3;");
+		method.visitInsn(Opcodes.POP);
+		var lambdaType = Type.getMethodType("(Lnet/minecraft/class_2;)V");
+		method.visitInvokeDynamicInsn("method_2", "()Lnet/minecraft/class_1;",
+				new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+						"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+						false),
+				lambdaType, new Handle(Opcodes.H_INVOKESTATIC, CLASS_NAME, "lambda$run$0", lambdaType.getDescriptor(), false), lambdaType);
+		method.visitInsn(Opcodes.POP);
+		method.visitInsn(Opcodes.RETURN);
+		method.visitMaxs(1, 0);
+		method.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,57 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks lookups of intermediary names through the id index, and of names without an id through the hash index
+ */
+class IntermediaryTableTest {
+	@TempDir
+	Path folder;
+
+	private Mappings.SimpleMappingData createMappings() throws IOException {
+		return TestMappings.create(folder,
+				Map.of(
+						"net/minecraft/class_1", "net/minecraft/world/Foo",
+						"net/minecraft/class_1$class_2", "net/minecraft/world/Foo$Bar",
+						"net/minecraft/class_1$1", "net/minecraft/world/Foo$1",
+						"net/minecraft/class_1$class_2$2", "net/minecraft/world/Foo$Bar$2"),
+				Map.of("method_10", "m_10_"),
+				Map.of("field_20", "f_20_"));
+	}
+
+	@Test
+	void namesWithIdsAreFound() throws IOException {
+		var mappings = createMappings();
+		assertEquals("net/minecraft/world/Foo", mappings.classes().get("net/minecraft/class_1"));
+		assertEquals("net/minecraft/world/Foo$Bar", mappings.classes().get("net/minecraft/class_1$class_2"));
+		assertEquals("m_10_", mappings.methods().get("method_10"));
+		assertEquals("f_20_", mappings.fields().get("field_20"));
+	}
+
+	@Test
+	void anonymousClassesAreFound() throws IOException {
+		var mappings = createMappings();
+		assertEquals("net/minecraft/world/Foo$1", mappings.classes().get("net/minecraft/class_1$1"));
+		assertEquals("net/minecraft/world/Foo$Bar$2", mappings.classes().get("net/minecraft/class_1$class_2$2"));
+		assertEquals("net/minecraft/world/Foo$1", mappings.classes().get("(Lnet/minecraft/class_1$1;)V", 2, 25));
+	}
+
+	@Test
+	void unknownNamesAreNotFound() throws IOException {
+		var mappings = createMappings();
+		assertNull(mappings.classes().get("net/minecraft/class_3"));
+		assertNull(mappings.classes().get("net/minecraft/class_1$3"));
+		assertNull(mappings.classes().get("com/example/class_1"));
+		assertNull(mappings.methods().get("method_11"));
+		assertNull(mappings.methods().get("notAMethod"));
+	}
+}
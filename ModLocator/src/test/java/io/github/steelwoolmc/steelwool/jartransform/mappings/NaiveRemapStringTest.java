@@ -0,0 +1,80 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the output of {@link Mappings#naiveRemapString} for the kinds of strings found in refmaps and annotations
+ */
+class NaiveRemapStringTest {
+	@TempDir
+	Path folder;
+
+	private Mappings.SimpleMappingData createMappings() throws IOException {
+		return TestMappings.create(folder,
+				Map.of("net/minecraft/class_1", "net/minecraft/world/Foo",
+						"net/minecraft/class_2", "net/minecraft/world/Bar",
+						"net/minecraft/class_2$class_3", "net/minecraft/world/Bar$Inner"),
+				Map.of("method_10", "m_10_", "method_11", "m_11_"),
+				Map.of("field_20", "f_20_", "field_21", "f_21_"));
+	}
+
+	@Test
+	void classNamesAreRemapped() throws IOException {
+		var mappings = createMappings();
+		assertEquals("net/minecraft/world/Foo", Mappings.naiveRemapString(mappings, "net/minecraft/class_1"));
+		assertEquals("net/minecraft/world/Bar$Inner", Mappings.naiveRemapString(mappings, "net/minecraft/class_2$class_3"));
+	}
+
+	@Test
+	void membersAreRemapped() throws IOException {
+		var mappings = createMappings();
+		assertEquals("m_10_", Mappings.naiveRemapString(mappings, "method_10"));
+		assertEquals("f_20_", Mappings.naiveRemapString(mappings, "field_20"));
+		assertEquals("m_10_m_11_f_20_", Mappings.naiveRemapString(mappings, "method_10method_11field_20"));
+	}
+
+	@Test
+	void descriptorsAreRemapped() throws IOException {
+		var mappings = createMappings();
+		assertEquals("Lnet/minecraft/world/Foo;", Mappings.naiveRemapString(mappings, "Lnet/minecraft/class_1;"));
+		assertEquals("Lcom/example/Foo;m_10_()V", Mappings.naiveRemapString(mappings, "Lcom/example/Foo;method_10()V"));
+		assertEquals("Lnet/minecraft/world/Foo;m_10_(Lnet/minecraft/world/Bar;I)V",
+				Mappings.naiveRemapString(mappings, "Lnet/minecraft/class_1;method_10(Lnet/minecraft/class_2;I)V"));
+		assertEquals("Lnet/minecraft/world/Foo;f_20_:[[Lnet/minecraft/world/Bar$Inner;",
+				Mappings.naiveRemapString(mappings, "Lnet/minecraft/class_1;field_20:[[Lnet/minecraft/class_2$class_3;"));
+		assertEquals("Lnet/minecraft/world/Bar;<init>(Lnet/minecraft/world/Foo;)V",
+				Mappings.naiveRemapString(mappings, "Lnet/minecraft/class_2;<init>(Lnet/minecraft/class_1;)V"));
+	}
+
+	@Test
+	void otherStringsAreLeftAsIs() throws IOException {
+		var mappings = createMappings();
+		for (var input : new String[] {"", "plain text", "class_1", "method_", "field_x", "Ljava/lang/String;", "Lcom/example/class_1;"}) {
+			assertEquals(input, Mappings.naiveRemapString(mappings, input));
+		}
+	}
+
+	@Test
+	void unmappedNamesAreLeftAsIs() throws IOException {
+		var mappings = createMappings();
+		// The original regex-based implementation inserted "null" for these; leaving them alone is the intended behaviour
+		assertEquals("net/minecraft/class_9999", Mappings.naiveRemapString(mappings, "net/minecraft/class_9999"));
+		assertEquals("m_10_(Lnet/minecraft/class_9999;)field_9999",
+				Mappings.naiveRemapString(mappings, "method_10(Lnet/minecraft/class_9999;)field_9999"));
+	}
+
+	@Test
+	void unchangedStringsAreNotCopied() throws IOException {
+		var mappings = createMappings();
+		var input = "Ljava/lang/String;method_(I)V";
+		assertSame(input, Mappings.naiveRemapString(mappings, input));
+	}
+}
@@ -0,0 +1,90 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the class mappings found by the streaming {@link ProguardClassParser}, however the data is split into writes
+ */
+class ProguardClassParserTest {
+	private static final String MAPPINGS = """
+			# {"fileName":"client.txt","id":"sourceFile"}
+			# {"id":"net.minecraftforge.mappings","version":"1.0"}
+			com.mojang.blaze3d.Blaze3D -> dkl:
+			# {"fileName":"Blaze3D.java","id":"sourceFile"}
+			    1:1:void <init>() -> <init>
+			    9:10:void youJustLostTheGame() -> a
+			net.minecraft.world.level.block.Block -> cpn:
+			    org.slf4j.Logger LOGGER -> a
+			    11:12:net.minecraft.world.level.block.state.BlockState defaultBlockState() -> o
+			net.minecraft.world.level.block.Block$BlockStatePairKey -> cpn$a:
+			\tint tabIndentedMember -> b
+			net.minecraft.client.Minecraft -> enn:
+			""";
+	/** Obfuscated names to Mojang names, for {@link #MAPPINGS}; member lines and comments are skipped */
+	private static final Map<String, String> EXPECTED = Map.of(
+			"dkl", "com/mojang/blaze3d/Blaze3D",
+			"cpn", "net/minecraft/world/level/block/Block",
+			"cpn$a", "net/minecraft/world/level/block/Block$BlockStatePairKey",
+			"enn", "net/minecraft/client/Minecraft");
+
+	@Test
+	void parsesWholeFile() {
+		assertEquals(EXPECTED, parse(MAPPINGS, new Random(0), false));
+	}
+
+	@Test
+	void parsesSplitWrites() {
+		var random = new Random(0);
+		for (var i = 0; i < 100; i++) {
+			assertEquals(EXPECTED, parse(MAPPINGS, random, true));
+		}
+	}
+
+	@Test
+	void parsesWindowsLineEndings() {
+		assertEquals(EXPECTED, parse(MAPPINGS.replace("\n", "\r\n"), new Random(0), true));
+	}
+
+	@Test
+	void parsesWithoutTrailingNewline() {
+		assertEquals(EXPECTED, parse(MAPPINGS.strip(), new Random(0), true));
+	}
+
+	@Test
+	void parsesLongLines() {
+		// Longer than the parser's initial line buffer
+		var longName = "net.minecraft." + "a".repeat(1000) + ".Long";
+		var mappings = longName + " -> xyz:\n    int member -> a\n";
+		assertEquals(Map.of("xyz", longName.replace('.', '/')), parse(mappings, new Random(0), true));
+	}
+
+	/**
+	 * Parse mapping data with a {@link ProguardClassParser}
+	 * @param mappings the mapping data
+	 * @param random decides where the data is split
+	 * @param split whether to split the data into writes of random sizes (including single bytes), rather than writing it all at once
+	 * @return the class mappings found by the parser
+	 */
+	private static Map<String, String> parse(String mappings, Random random, boolean split) {
+		var data = mappings.getBytes(StandardCharsets.UTF_8);
+		var parser = new ProguardClassParser();
+		var offset = 0;
+		while (offset < data.length) {
+			var length = split ? Math.min(data.length - offset, random.nextInt(16)) : data.length;
+			if (length == 1) {
+				parser.write(data[offset]);
+			} else {
+				parser.write(data, offset, length);
+			}
+			offset += length;
+		}
+		parser.close();
+		return parser.getClassMappings();
+	}
+}
@@ -0,0 +1,27 @@
+package io.github.steelwoolmc.steelwool.jartransform.mappings;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link Mappings.SimpleMappingData} from small hand-written tables, stored and loaded the same way as the real mapping data
+ */
+public class TestMappings {
+	private static final String CONTENT_HASH = "test";
+
+	/**
+	 * Write and load a mapping table
+	 * @param folder the folder to write the table to
+	 * @param classes map from intermediary class names to TSRG class names
+	 * @param methods map from intermediary method names to TSRG method names
+	 * @param fields map from intermediary field names to TSRG field names
+	 * @return the mapping data
+	 */
+	public static Mappings.SimpleMappingData create(Path folder, Map<String, String> classes, Map<String, String> methods, Map<String, String> fields) throws IOException {
+		var file = folder.resolve("test-mappings.bin");
+		MappingTable.write(file, Mappings.TARGET_VERSION, CONTENT_HASH, List.of(classes, methods, fields, Map.of()), Mappings.ID_FORMATS);
+		return Mappings.loadMappingTable(file, CONTENT_HASH);
+	}
+}
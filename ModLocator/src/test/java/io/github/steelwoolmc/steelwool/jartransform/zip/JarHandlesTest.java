@@ -0,0 +1,74 @@
+package io.github.steelwoolmc.steelwool.jartransform.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that {@link JarHandles} shares readers between open handles, and central directories between readers of an unchanged jar
+ */
+class JarHandlesTest {
+	@TempDir
+	Path folder;
+
+	@Test
+	void openHandlesShareAReader() throws IOException {
+		var jar = writeJar("a.jar", "a.txt");
+		var handles = new JarHandles();
+		try (var first = handles.acquire(jar); var second = handles.acquire(jar)) {
+			assertSame(first.reader(), second.reader());
+		}
+	}
+
+	@Test
+	void reopenedJarsReuseTheirDirectory() throws IOException {
+		var jar = writeJar("a.jar", "a.txt");
+		var handles = new JarHandles();
+		ZipReader first;
+		try (var handle = handles.acquire(jar)) {
+			first = handle.reader();
+		}
+		try (var handle = handles.acquire(jar)) {
+			assertNotSame(first, handle.reader());
+			assertSame(first.getDirectory(), handle.reader().getDirectory());
+			assertEquals("contents of a.txt", new String(handle.reader().read(handle.reader().getEntry("a.txt")), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void changedJarsAreParsedAgain() throws IOException {
+		var jar = writeJar("a.jar", "a.txt");
+		var handles = new JarHandles();
+		ZipReader.Directory directory;
+		try (var handle = handles.acquire(jar)) {
+			directory = handle.reader().getDirectory();
+		}
+
+		// Same size, so only the modification time tells them apart
+		var lastModified = Files.getLastModifiedTime(jar);
+		writeJar("a.jar", "b.txt");
+		Files.setLastModifiedTime(jar, FileTime.fromMillis(lastModified.toMillis() + 10_000));
+		try (var handle = handles.acquire(jar)) {
+			assertNotSame(directory, handle.reader().getDirectory());
+			assertEquals(List.of("b.txt"), handle.reader().getEntries().stream().map(ZipReader.Entry::name).toList());
+		}
+	}
+
+	private Path writeJar(String name, String entryName) throws IOException {
+		var jar = folder.resolve(name);
+		try (var writer = ZipWriter.create(jar)) {
+			writer.write(entryName, ("contents of " + entryName).getBytes(StandardCharsets.UTF_8));
+		}
+		return jar;
+	}
+}
@@ -0,0 +1,192 @@
+package io.github.steelwoolmc.steelwool.jartransform.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Checks that jars written by {@link ZipWriter} can be read by the JDK and by {@link ZipReader}, and that jars written by the JDK
+ * are read and copied correctly, including stored entries, duplicate names and zip64 archives
+ */
+class ZipRoundTripTest {
+	/** More than fit in the entry count of a normal end of central directory record */
+	private static final int ZIP64_ENTRY_COUNT = 70_000;
+
+	@TempDir
+	Path folder;
+
+	@Test
+	void writtenEntriesCanBeReadBack() throws IOException {
+		var entries = new LinkedHashMap<String, byte[]>();
+		entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+		entries.put("empty.txt", new byte[0]);
+		entries.put("a/b/large.bin", sampleData(200_000));
+		entries.put("\u00fcn\u00efcode.txt", "names are UTF-8".getBytes(StandardCharsets.UTF_8));
+
+		var jar = folder.resolve("written.jar");
+		try (var writer = ZipWriter.create(jar)) {
+			for (var entry : entries.entrySet()) {
+				writer.write(entry.getKey(), entry.getValue());
+			}
+		}
+
+		assertJdkContents(jar, entries);
+		assertReaderContents(jar, entries);
+	}
+
+	@Test
+	void storedEntriesAreReadAndCopiedAsIs() throws IOException {
+		var entries = new LinkedHashMap<String, byte[]>();
+		entries.put("stored.bin", sampleData(10_000));
+		entries.put("stored-empty.txt", new byte[0]);
+		entries.put("deflated.txt", "deflated alongside stored entries".getBytes(StandardCharsets.UTF_8));
+
+		var input = folder.resolve("stored.jar");
+		try (var output = new ZipOutputStream(Files.newOutputStream(input))) {
+			for (var entry : entries.entrySet()) {
+				var zipEntry = new ZipEntry(entry.getKey());
+				if (entry.getKey().startsWith("stored")) {
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(entry.getValue().length);
+					zipEntry.setCrc(crc(entry.getValue()));
+				}
+				output.putNextEntry(zipEntry);
+				output.write(entry.getValue());
+				output.closeEntry();
+			}
+		}
+		assertReaderContents(input, entries);
+
+		var copy = folder.resolve("stored-copy.jar");
+		try (var reader = ZipReader.open(input); var writer = ZipWriter.create(copy)) {
+			for (var entry : reader.getEntries()) {
+				writer.writeRaw(entry, reader.getRawData(entry));
+			}
+		}
+		assertJdkContents(copy, entries);
+		try (var zipFile = new ZipFile(copy.toFile())) {
+			assertEquals(ZipEntry.STORED, zipFile.getEntry("stored.bin").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("deflated.txt").getMethod());
+		}
+	}
+
+	@Test
+	void onlyTheFirstOfDuplicateEntriesIsRead() throws IOException {
+		// The JDK refuses to write duplicate names, so the second entry is renamed afterwards; both names have the same length
+		var input = folder.resolve("duplicates.jar");
+		try (var output = new ZipOutputStream(Files.newOutputStream(input))) {
+			for (var name : new String[] {"dup.txt", "other.txt", "DUP.txt"}) {
+				output.putNextEntry(new ZipEntry(name));
+				output.write(("contents of " + name).getBytes(StandardCharsets.UTF_8));
+				output.closeEntry();
+			}
+		}
+		var data = Files.readAllBytes(input);
+		var renamed = new String(data, StandardCharsets.ISO_8859_1).replace("DUP.txt", "dup.txt").getBytes(StandardCharsets.ISO_8859_1);
+		Files.write(input, renamed);
+
+		try (var reader = ZipReader.open(input)) {
+			var names = reader.getEntries().stream().map(ZipReader.Entry::name).toList();
+			assertEquals(List.of("dup.txt", "other.txt"), names);
+			assertEquals("contents of dup.txt", new String(reader.read(reader.getEntry("dup.txt")), StandardCharsets.UTF_8));
+
+			// Copying every entry must not trip over the duplicate
+			var copy = folder.resolve("duplicates-copy.jar");
+			try (var writer = ZipWriter.create(copy)) {
+				for (var entry : reader.getEntries()) {
+					writer.writeRaw(entry, reader.getRawData(entry));
+				}
+			}
+			var expected = new LinkedHashMap<String, byte[]>();
+			expected.put("dup.txt", "contents of dup.txt".getBytes(StandardCharsets.UTF_8));
+			expected.put("other.txt", "contents of other.txt".getBytes(StandardCharsets.UTF_8));
+			assertJdkContents(copy, expected);
+		}
+	}
+
+	@Test
+	void zip64ArchivesAreWrittenAndRead() throws IOException {
+		var entries = new LinkedHashMap<String, byte[]>();
+		for (var i = 0; i < ZIP64_ENTRY_COUNT; i++) {
+			entries.put("entries/" + i + ".txt", Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+		}
+
+		var written = folder.resolve("zip64-written.jar");
+		try (var writer = ZipWriter.create(written)) {
+			for (var entry : entries.entrySet()) {
+				writer.write(entry.getKey(), entry.getValue());
+			}
+		}
+		assertJdkContents(written, entries);
+		assertReaderContents(written, entries);
+
+		var jdkWritten = folder.resolve("zip64-jdk.jar");
+		try (var output = new ZipOutputStream(Files.newOutputStream(jdkWritten))) {
+			for (var entry : entries.entrySet()) {
+				output.putNextEntry(new ZipEntry(entry.getKey()));
+				output.write(entry.getValue());
+				output.closeEntry();
+			}
+		}
+		assertReaderContents(jdkWritten, entries);
+	}
+
+	private static void assertJdkContents(Path jar, Map<String, byte[]> expected) throws IOException {
+		try (var zipFile = new ZipFile(jar.toFile())) {
+			var names = new ArrayList<String>();
+			zipFile.stream().forEach(entry -> names.add(entry.getName()));
+			assertEquals(new ArrayList<>(expected.keySet()), names);
+			for (var entry : expected.entrySet()) {
+				var zipEntry = zipFile.getEntry(entry.getKey());
+				assertNotNull(zipEntry);
+				try (var stream = zipFile.getInputStream(zipEntry)) {
+					assertArrayEquals(entry.getValue(), stream.readAllBytes());
+				}
+			}
+		}
+	}
+
+	private static void assertReaderContents(Path jar, Map<String, byte[]> expected) throws IOException {
+		try (var reader = ZipReader.open(jar)) {
+			var names = reader.getEntries().stream().map(ZipReader.Entry::name).toList();
+			assertEquals(new ArrayList<>(expected.keySet()), names);
+			for (var entry : expected.entrySet()) {
+				var zipEntry = reader.getEntry(entry.getKey());
+				assertNotNull(zipEntry);
+				assertEquals(crc(entry.getValue()), zipEntry.crc());
+				assertArrayEquals(entry.getValue(), reader.read(zipEntry));
+			}
+		}
+	}
+
+	/** @return data that compresses somewhat, but not to nothing */
+	private static byte[] sampleData(int length) {
+		var data = new byte[length];
+		for (var i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 % 251 ^ i >> 8);
+		}
+		return data;
+	}
+
+	private static long crc(byte[] data) {
+		var crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+}
@@ -20,8 +20,13 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -39,11 +44,13 @@ public class GenerateMappingsPlugin implements Plugin<Project> {
 			generateMappingsTask.mcpconfigJarFile = project.getObjects().fileProperty();
 			generateMappingsTask.outputFile = project.getObjects().fileProperty();
 			generateMappingsTask.secondaryOutputFile = project.getObjects().fileProperty();
+			generateMappingsTask.hashOutputFile = project.getObjects().fileProperty();
 
 			generateMappingsTask.intermediaryJarFile.set(project.getConfigurations().getByName("intermediary").getSingleFile());
 			generateMappingsTask.mcpconfigJarFile.set(project.getConfigurations().getByName("mcpconfig").getSingleFile());
 			generateMappingsTask.outputFile.set(project.getLayout().getBuildDirectory().file("intermediary_to_tsrg.tiny"));
 			generateMappingsTask.secondaryOutputFile.set(project.getLayout().getBuildDirectory().file("intermediary_to_tsrg_temp_hack.tiny"));
+			generateMappingsTask.hashOutputFile.set(project.getLayout().getBuildDirectory().file("intermediary_to_tsrg.sha256"));
 		});
 		project.getTasks().getByName("processResources").dependsOn(task);
 	}
@@ -55,6 +62,8 @@ public class GenerateMappingsPlugin implements Plugin<Project> {
 
 		RegularFileProperty outputFile;
 		RegularFileProperty secondaryOutputFile;
+		/** The hash of both mapping files, so that Steelwool doesn't have to hash them itself at runtime to key its cached mapping data */
+		RegularFileProperty hashOutputFile;
 
 		@InputFile
 		RegularFileProperty getIntermediaryJarFile() {
@@ -72,6 +81,10 @@ public class GenerateMappingsPlugin implements Plugin<Project> {
 		RegularFileProperty getSecondaryOutputFile() {
 			return secondaryOutputFile;
 		}
+		@OutputFile
+		RegularFileProperty getHashOutputFile() {
+			return hashOutputFile;
+		}
 
 		@TaskAction
 		private void generateMappings() {
@@ -116,13 +129,32 @@ public class GenerateMappingsPlugin implements Plugin<Project> {
 				try(var writer = new FileWriter(secondaryOutputFile.get().getAsFile(), false)) {
 					writer.write(outputs[1]);
 				}
+				try(var writer = new FileWriter(hashOutputFile.get().getAsFile(), false)) {
+					writer.write(hash(outputs));
+				}
 
-			} catch (URISyntaxException | IOException e) {
+			} catch (URISyntaxException | IOException | NoSuchAlgorithmException e) {
 				throw new UnsupportedOperationException(e);
 			}
 		}
 	}
 
+	/**
+	 * Hash the generated mapping files
+	 * @param outputs the contents of the mapping files
+	 * @return the hex-encoded SHA-256 hash of all of them
+	 */
+	private static String hash(String[] outputs) throws NoSuchAlgorithmException {
+		var digest = MessageDigest.getInstance("SHA-256");
+		for (var output : outputs) {
+			var data = output.getBytes(StandardCharsets.UTF_8);
+			// Length-prefixed, so that moving data from one file to the other changes the hash
+			digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array());
+			digest.update(data);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
 	private static @Nullable String tsrgLineToTiny(String line) {
 		line = line.stripTrailing();
 		// Double-indented lines are method parameters and `static`, which we don't care about